@@ -0,0 +1,58 @@
+package com.upgrade.campsite.configuration;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+/**
+ * Encoding and decoding of a cached date, with the epoch-day codec and with the JDK serialization it replaced.
+ * Encoded sizes are 4 bytes per date against 44, as noted in the README.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EpochDayRedisSerializerBenchmark {
+
+    private EpochDayRedisSerializer epochDaySerializer;
+    private JdkSerializationRedisSerializer jdkSerializer;
+    private LocalDate date;
+    private byte[] epochDayBytes;
+    private byte[] jdkBytes;
+
+    @Setup
+    public void setup() {
+        epochDaySerializer = new EpochDayRedisSerializer();
+        jdkSerializer = new JdkSerializationRedisSerializer();
+        date = LocalDate.now().plusDays(15);
+        epochDayBytes = epochDaySerializer.serialize(date);
+        jdkBytes = jdkSerializer.serialize(date);
+    }
+
+    @Benchmark
+    public byte[] encodeEpochDay() {
+        return epochDaySerializer.serialize(date);
+    }
+
+    @Benchmark
+    public Object decodeEpochDay() {
+        return epochDaySerializer.deserialize(epochDayBytes);
+    }
+
+    @Benchmark
+    public byte[] encodeJdk() {
+        return jdkSerializer.serialize(date);
+    }
+
+    @Benchmark
+    public Object decodeJdk() {
+        return jdkSerializer.deserialize(jdkBytes);
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * BookingService.getAvailableDates on each of its read paths.
+ * Ranges inside the index window are answered by the index, longer ranges go through the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AvailabilityBenchmark {
+
+    private BookingService indexService;
+    private BookingService cacheHitService;
+    private BookingService cacheMissService;
+    private BookingService emptyCampsiteService;
+
+    private LocalDate startDate;
+    private LocalDate endDate;
+
+    @Setup
+    public void setup() {
+        BookingRepository bookingRepository = BookingRepositoryStub.create(BookingBenchmarkFixture.bookedDates());
+
+        indexService = BookingBenchmarkFixture.bookingService(bookingRepository, new InMemoryBookingCacheService(true));
+        cacheHitService = BookingBenchmarkFixture.bookingService(bookingRepository, new InMemoryBookingCacheService(true));
+        cacheMissService = BookingBenchmarkFixture.bookingService(bookingRepository, new InMemoryBookingCacheService(false));
+        emptyCampsiteService = BookingBenchmarkFixture.bookingService(
+                BookingRepositoryStub.create(new HashSet<>()), new InMemoryBookingCacheService(true));
+
+        // Longer than the index window
+        startDate = LocalDate.now();
+        endDate = startDate.plusDays(89);
+    }
+
+    @Benchmark
+    public List<LocalDate> indexHit() {
+        return indexService.getAvailableDates(BookingBenchmarkFixture.CAMPSITE_ID, null, null);
+    }
+
+    @Benchmark
+    public List<LocalDate> cacheHit() {
+        return cacheHitService.getAvailableDates(BookingBenchmarkFixture.CAMPSITE_ID, startDate, endDate);
+    }
+
+    @Benchmark
+    public List<LocalDate> cacheMiss() {
+        return cacheMissService.getAvailableDates(BookingBenchmarkFixture.CAMPSITE_ID, startDate, endDate);
+    }
+
+    @Benchmark
+    public List<LocalDate> emptyCampsite() {
+        return emptyCampsiteService.getAvailableDates(BookingBenchmarkFixture.CAMPSITE_ID, startDate, endDate);
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Wires a BookingService with in-process stand-ins, without starting Spring, Redis or H2.
+ */
+public final class BookingBenchmarkFixture {
+
+    public static final Long CAMPSITE_ID = 1L;
+
+    private BookingBenchmarkFixture() {
+    }
+
+    public static BookingService bookingService(BookingRepository bookingRepository, BookedDatesCache cachingService) {
+        AvailabilityIndex availabilityIndex = new AvailabilityIndex();
+        ReflectionTestUtils.setField(availabilityIndex, "horizonDays", 64);
+        ReflectionTestUtils.setField(availabilityIndex, "maxAgeSeconds", 0L);
+
+        BookingService bookingService = new BookingService();
+        ReflectionTestUtils.setField(bookingService, "bookingRepository", bookingRepository);
+        ReflectionTestUtils.setField(bookingService, "cachingService", cachingService);
+        ReflectionTestUtils.setField(bookingService, "availabilityIndex", availabilityIndex);
+        ReflectionTestUtils.setField(bookingService, "campsiteCount", 100L);
+        return bookingService;
+    }
+
+    // Books every other day of the next 90 days, the worst case for the diffing
+    public static Set<LocalDate> bookedDates() {
+        Set<LocalDate> bookedDates = new HashSet<>();
+        for (int i = 1; i <= 90; i += 2) {
+            bookedDates.add(LocalDate.now().plusDays(i));
+        }
+        return bookedDates;
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Date helpers used by the write paths, and the list diffing used by the cache read path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BookingDatesBenchmark {
+
+    private BookingService bookingService;
+
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private Set<LocalDate> bookedDates;
+
+    @Setup
+    public void setup() {
+        bookedDates = BookingBenchmarkFixture.bookedDates();
+        bookingService = BookingBenchmarkFixture.bookingService(
+                BookingRepositoryStub.create(bookedDates), new InMemoryBookingCacheService(true));
+
+        startDate = LocalDate.now().plusDays(1);
+        endDate = LocalDate.now().plusDays(3);
+    }
+
+    @Benchmark
+    public Set<LocalDate> getDatesBetween() {
+        return bookingService.getDatesBetween(startDate, endDate);
+    }
+
+    @Benchmark
+    public LocalDate validateDates() {
+        bookingService.validateDates(startDate, endDate);
+        return startDate;
+    }
+
+    @Benchmark
+    public List<LocalDate> removeAllDiffing() {
+        List<LocalDate> availableDates = LocalDate.now()
+                .datesUntil(LocalDate.now().plusDays(90))
+                .collect(Collectors.toList());
+        availableDates.removeAll(bookedDates);
+        return availableDates;
+    }
+
+}
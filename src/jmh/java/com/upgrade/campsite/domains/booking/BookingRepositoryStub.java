@@ -0,0 +1,49 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * In-process stand-in for the H2 backed repository, only implements the queries used by the read paths.
+ * Every booked date belongs to the same campsite.
+ */
+public class BookingRepositoryStub implements InvocationHandler {
+
+    private final TreeSet<LocalDate> bookedDates;
+
+    private BookingRepositoryStub(Set<LocalDate> bookedDates) {
+        this.bookedDates = new TreeSet<>(bookedDates);
+    }
+
+    public static BookingRepository create(Set<LocalDate> bookedDates) {
+        return (BookingRepository) Proxy.newProxyInstance(
+                BookingRepository.class.getClassLoader(),
+                new Class<?>[]{BookingRepository.class},
+                new BookingRepositoryStub(bookedDates));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "findScheduledDates":
+                LocalDate startDate = (LocalDate) args[1];
+                LocalDate endDate = (LocalDate) args[2];
+                return new TreeSet<>(bookedDates.subSet(startDate, true, endDate, true));
+            case "findByBookingId":
+                return null;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "BookingRepositoryStub";
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-process stand-in for the Redis cache, keeps the same range semantics as the sorted sets.
+ */
+public class InMemoryBookingCacheService implements BookedDatesCache {
+
+    private final Map<Long, NavigableMap<Long, LocalDate>> dates = new ConcurrentHashMap<>();
+    private final Map<Long, Long> loadedFrom = new ConcurrentHashMap<>();
+
+    // When false the cache never reports itself as loaded, so every read is a miss
+    private final boolean keepLoaded;
+
+    public InMemoryBookingCacheService(boolean keepLoaded) {
+        this.keepLoaded = keepLoaded;
+    }
+
+    @Override
+    public boolean isLoaded(Long campsiteId, LocalDate startDate) {
+        Long from = loadedFrom.get(campsiteId);
+        return keepLoaded && from != null && from <= startDate.toEpochDay();
+    }
+
+    @Override
+    public Set<Long> getCampsiteIds() {
+        return new HashSet<>(loadedFrom.keySet());
+    }
+
+    @Override
+    public Set<LocalDate> getBookedDates(Long campsiteId, LocalDate startDate, LocalDate endDate) {
+        return new HashSet<>(getDates(campsiteId)
+                .subMap(startDate.toEpochDay(), true, endDate.toEpochDay(), true)
+                .values());
+    }
+
+    // Benchmarks never sync while changes are applied, so versions are not kept
+    @Override
+    public long getVersion(Long campsiteId) {
+        return 0;
+    }
+
+    @Override
+    public boolean syncCache(Long campsiteId, Set<LocalDate> bookingDates, LocalDate loadedFrom, long version) {
+        NavigableMap<Long, LocalDate> campsiteDates = getDates(campsiteId);
+        campsiteDates.clear();
+        bookingDates.forEach(d -> campsiteDates.put(d.toEpochDay(), d));
+        this.loadedFrom.put(campsiteId, loadedFrom.toEpochDay());
+        return true;
+    }
+
+    @Override
+    public void applyChanges(Long campsiteId, Set<LocalDate> addedDates, Set<LocalDate> removedDates) {
+        NavigableMap<Long, LocalDate> campsiteDates = getDates(campsiteId);
+        removedDates.forEach(d -> campsiteDates.remove(d.toEpochDay()));
+        addedDates.forEach(d -> campsiteDates.put(d.toEpochDay(), d));
+    }
+
+    @Override
+    public void clearCache() {
+        dates.clear();
+        loadedFrom.clear();
+    }
+
+    private NavigableMap<Long, LocalDate> getDates(Long campsiteId) {
+        return dates.computeIfAbsent(campsiteId, id -> new ConcurrentSkipListMap<>());
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cache-miss query for the scheduled dates of a campsite, against an H2 schema migrated with the app migrations
+ * and seeded with historical bookings. The query time should stay flat as history grows.
+ * joined is the SQL of the previous JPQL, through booking.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScheduledDatesQueryBenchmark {
+
+    private static final int CAMPSITES = 100;
+
+    private static final String JOINED_QUERY = "SELECT d.date FROM booking b"
+            + " INNER JOIN booking_date d ON b.id = d.booking_id"
+            + " WHERE d.campsite_id = ? AND d.date >= ? AND d.date <= ?";
+
+    private static final String DIRECT_QUERY = "SELECT d.date FROM booking_date d"
+            + " WHERE d.campsite_id = ? AND d.date >= ? AND d.date <= ?";
+
+    // Booked nights in the past, one booking per night
+    @Param({"100000", "1000000"})
+    private int historyRows;
+
+    private Connection connection;
+    private PreparedStatement joinedQuery;
+    private PreparedStatement directQuery;
+
+    @Setup
+    public void setup() throws SQLException {
+        String url = "jdbc:h2:mem:benchmark" + historyRows + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+        Flyway.configure()
+                .dataSource(url, "sa", "")
+                .locations("classpath:db/migration")
+                .load()
+                .migrate();
+
+        connection = DriverManager.getConnection(url, "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            // Every campsite booked every night, going back from yesterday
+            statement.execute("INSERT INTO booking (id, booking_id, name, email, campsite_id, start_date, end_date)"
+                    + " SELECT X, RANDOM_UUID(), 'name', 'email', MOD(X, " + CAMPSITES + ") + 1,"
+                    + " DATEADD('DAY', -(X / " + CAMPSITES + ") - 1, CURRENT_DATE),"
+                    + " DATEADD('DAY', -(X / " + CAMPSITES + ") - 1, CURRENT_DATE)"
+                    + " FROM SYSTEM_RANGE(1, " + historyRows + ")");
+            statement.execute("INSERT INTO booking_date (booking_id, campsite_id, date)"
+                    + " SELECT id, campsite_id, start_date FROM booking");
+            statement.execute("ANALYZE");
+        }
+
+        joinedQuery = prepare(JOINED_QUERY);
+        directQuery = prepare(DIRECT_QUERY);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public int joined() throws SQLException {
+        return count(joinedQuery);
+    }
+
+    @Benchmark
+    public int direct() throws SQLException {
+        return count(directQuery);
+    }
+
+    // Next month for the campsite, as loaded on a cache miss
+    private PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        statement.setLong(1, BookingBenchmarkFixture.CAMPSITE_ID);
+        statement.setDate(2, Date.valueOf(LocalDate.now()));
+        statement.setDate(3, Date.valueOf(LocalDate.now().plusDays(30)));
+        return statement;
+    }
+
+    private int count(PreparedStatement statement) throws SQLException {
+        int rows = 0;
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.upgrade.campsite.dtos;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Jackson serialization of the API responses, configured as in application.properties.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DtoSerializationBenchmark {
+
+    private ObjectMapper mapper;
+    private List<LocalDate> availableDates;
+    private BookingDTO booking;
+
+    @Setup
+    public void setup() {
+        mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        availableDates = LocalDate.now()
+                .datesUntil(LocalDate.now().plusDays(30))
+                .collect(Collectors.toList());
+
+        booking = BookingDTO.builder()
+                .bookingId(UUID.randomUUID().toString())
+                .name("Test name")
+                .email("test@gmail.com")
+                .startDate(LocalDate.now().plusDays(1))
+                .endDate(LocalDate.now().plusDays(3))
+                .build();
+    }
+
+    @Benchmark
+    public String serializeAvailableDates() throws JsonProcessingException {
+        return mapper.writeValueAsString(availableDates);
+    }
+
+    @Benchmark
+    public String serializeBooking() throws JsonProcessingException {
+        return mapper.writeValueAsString(booking);
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.upgrade.campsite.configuration;
+
+import java.time.LocalDate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * Template for the booked dates cache, with plain string keys and dates as epoch-days.
+ * The default redisTemplate uses JDK serialization for both, which is larger and slower to read.
+ */
+@Configuration
+public class BookingCacheRedisConfig {
+
+    @Bean(name = "bookingDatesRedisTemplate")
+    public RedisTemplate<String, LocalDate> bookingDatesRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, LocalDate> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(new EpochDayRedisSerializer());
+        return template;
+    }
+
+}
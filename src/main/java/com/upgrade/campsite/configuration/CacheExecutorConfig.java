@@ -0,0 +1,61 @@
+package com.upgrade.campsite.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Bounded executor for cache work, exposed in the actuator metrics endpoint as executor.* (name=cacheExecutor)
+ * and campsite.cache.task.latency.
+ */
+@Configuration
+public class CacheExecutorConfig {
+
+    @Value("${cache.executor.pool-size:1}")
+    private int poolSize;
+
+    @Value("${cache.executor.max-pool-size:2}")
+    private int maxPoolSize;
+
+    @Value("${cache.executor.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Bean(name = "cacheExecutor")
+    public ThreadPoolTaskExecutor cacheExecutor(MeterRegistry meterRegistry) {
+        Timer taskLatency = Timer.builder("campsite.cache.task.latency")
+                .description("Time from submission to completion of cache tasks")
+                .register(meterRegistry);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("cache-");
+        // Rejected tasks are not lost, changes stay in the outbox until the scheduled relay applies them
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setTaskDecorator(task -> {
+            long submittedAt = System.nanoTime();
+            return () -> {
+                try {
+                    task.run();
+                } finally {
+                    taskLatency.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                }
+            };
+        });
+        executor.initialize();
+
+        new ExecutorServiceMetrics(executor.getThreadPoolExecutor(), "cacheExecutor", Tags.empty())
+                .bindTo(meterRegistry);
+
+        return executor;
+    }
+
+}
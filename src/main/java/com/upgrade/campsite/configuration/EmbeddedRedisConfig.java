@@ -4,11 +4,16 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Configuration;
 import redis.embedded.RedisServer;
 
+/**
+ * Redis server started along with the app, only when cache.redis.embedded is true.
+ */
 @Slf4j
 @Configuration
+@ConditionalOnProperty(name = "cache.redis.embedded", havingValue = "true")
 public class EmbeddedRedisConfig {
 
     @Value("${spring.redis.port}")
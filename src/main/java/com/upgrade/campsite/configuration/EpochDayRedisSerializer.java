@@ -0,0 +1,36 @@
+package com.upgrade.campsite.configuration;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * Dates as their epoch-day, a 4 byte big-endian int, instead of the 44 bytes of JDK serialization.
+ */
+public class EpochDayRedisSerializer implements RedisSerializer<LocalDate> {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    @Override
+    public byte[] serialize(LocalDate date) throws SerializationException {
+        if (date == null) {
+            return EMPTY;
+        }
+
+        return ByteBuffer.allocate(Integer.BYTES).putInt((int) date.toEpochDay()).array();
+    }
+
+    @Override
+    public LocalDate deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes.length != Integer.BYTES) {
+            throw new SerializationException("Invalid epoch-day of " + bytes.length + " bytes.");
+        }
+
+        return LocalDate.ofEpochDay(ByteBuffer.wrap(bytes).getInt());
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.upgrade.campsite.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executors sending the availability feed to its subscribers, exposed in the actuator metrics endpoint
+ * as executor.* (name=feedExecutor and name=feedWriterExecutor).
+ */
+@Configuration
+public class FeedExecutorConfig {
+
+    @Value("${availability.feed.pool-size:4}")
+    private int poolSize;
+
+    // A subscriber is queued at most once, so the queue never holds more than the subscribers
+    @Value("${availability.feed.max-subscribers:10000}")
+    private int queueCapacity;
+
+    // A write blocked on a slow client holds its thread until the connection times out
+    @Value("${availability.feed.writer-pool-size:32}")
+    private int writerPoolSize;
+
+    @Bean(name = "feedExecutor")
+    public ThreadPoolTaskExecutor feedExecutor(MeterRegistry meterRegistry) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("feed-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+
+        new ExecutorServiceMetrics(executor.getThreadPoolExecutor(), "feedExecutor", Tags.empty())
+                .bindTo(meterRegistry);
+
+        return executor;
+    }
+
+    // No queue, writes are rejected when every writer is blocked, and the feed tries again later
+    @Bean(name = "feedWriterExecutor")
+    public ThreadPoolTaskExecutor feedWriterExecutor(MeterRegistry meterRegistry) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(writerPoolSize);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("feed-writer-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+
+        new ExecutorServiceMetrics(executor.getThreadPoolExecutor(), "feedWriterExecutor", Tags.empty())
+                .bindTo(meterRegistry);
+
+        return executor;
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.upgrade.campsite.configuration;
+
+import java.util.concurrent.Executors;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Listener container for the Redis channels used to notify the other instances.
+ * Messages are handled by a single thread, so they are applied in the order they were sent.
+ */
+@Configuration
+public class RedisMessagingConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.setTaskExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-listener");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        return container;
+    }
+
+}
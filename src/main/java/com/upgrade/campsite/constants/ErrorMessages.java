@@ -4,6 +4,8 @@ public class ErrorMessages {
 
     public static final String BOOKING_ID_NOT_FOUND = "Could not find the requested booking.";
 
+    public static final String CAMPSITE_ID_NOT_FOUND = "Could not find the requested campsite.";
+
     public static final String INVALID_DATE_START_BEFORE_END = "Dates are invalid. Start date must be after end date.";
 
     public static final String INVALID_BOOKING_DATES = "Invalid booking dates. Reservation is for a maximum of 3 days " +
@@ -11,5 +13,11 @@ public class ErrorMessages {
 
     public static final String ALREADY_BOOKED = "Apologies, but the date/s are already taken.";
 
+    public static final String IDEMPOTENCY_KEY_REUSED = "Idempotency-Key was already used for a different request.";
+
+    public static final String IDEMPOTENCY_KEY_IN_PROGRESS = "A request with this Idempotency-Key is still being processed. Please try again later.";
+
+    public static final String FEED_UNAVAILABLE = "Apologies, but the availability feed is full at the moment. Please try again later.";
+
     public static final String USER_FRIENDLY_GENERAL_ERROR = "Apologies, but we could not process your request at the moment. Please try again later.";
 }
@@ -1,23 +1,40 @@
 package com.upgrade.campsite.controllers;
 
 import com.upgrade.campsite.domains.booking.BookingService;
+import com.upgrade.campsite.domains.feed.AvailabilityFeed;
+import com.upgrade.campsite.domains.idempotency.IdempotencyStore;
+import com.upgrade.campsite.dtos.AvailabilityBatchDTO;
+import com.upgrade.campsite.dtos.AvailabilityBitmapDTO;
+import com.upgrade.campsite.dtos.AvailabilityDTO;
+import com.upgrade.campsite.dtos.BookingBatchDTO;
 import com.upgrade.campsite.dtos.BookingDTO;
+import com.upgrade.campsite.dtos.BookingResultDTO;
+import com.upgrade.campsite.dtos.HoldDTO;
 import com.upgrade.campsite.dtos.ModifyBookingDTO;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.util.List;
 import javax.validation.Valid;
 import javax.validation.constraints.Future;
 import javax.validation.constraints.FutureOrPresent;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Size;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @Slf4j
 @Validated
@@ -28,17 +45,90 @@ public class BookingController {
     @Autowired
     private BookingService bookingService;
 
-    @Operation(summary = "Get available dates for booking.")
-    @GetMapping(path = "/availableDates", produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<LocalDate> getAvailableDates(
+    @Autowired
+    private AvailabilityFeed availabilityFeed;
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    // Compact availability formats, selected with the Accept header or the format parameter
+    public static final String AVAILABILITY_BITMAP_VALUE = "application/vnd.campsite.availability-bitmap+json";
+    public static final String FORMAT_BITMAP = "bitmap";
+    public static final String FORMAT_BINARY = "binary";
+
+    @Operation(summary = "Get available dates for booking. "
+            + "Use format=bitmap (or Accept: " + AVAILABILITY_BITMAP_VALUE + ") for a base64 availability mask, "
+            + "or format=binary (or Accept: application/octet-stream) for the raw mask. "
+            + "Supports If-None-Match with the returned ETag.")
+    @GetMapping(path = "/availableDates",
+            produces = {MediaType.APPLICATION_JSON_VALUE, AVAILABILITY_BITMAP_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<?> getAvailableDates(
+            @RequestParam(name = "campsiteId", defaultValue = "1")
+            @Parameter(name = "campsiteId", example = "1") @Min(1) Long campsiteId,
             @RequestParam(name = "startDate", required = false)
             @Parameter(name = "startDate", example = "yyyy-MM-dd")
             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @FutureOrPresent LocalDate startDate,
             @RequestParam(name = "endDate", required = false)
             @Parameter(name = "endDate", example = "yyyy-MM-dd")
-            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @Future LocalDate endDate) {
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @Future LocalDate endDate,
+            @RequestParam(name = "format", required = false)
+            @Parameter(name = "format", example = FORMAT_BITMAP) String format,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+            WebRequest webRequest) {
+
+        String selectedFormat = format != null ? format : getAcceptedFormat(accept);
+        boolean bitmap = FORMAT_BITMAP.equalsIgnoreCase(selectedFormat);
+        boolean binary = !bitmap && FORMAT_BINARY.equalsIgnoreCase(selectedFormat);
+
+        // Shared caches must keep a response per format
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT);
+
+        // Answer 304 without reading the dates when the client already has this version
+        String version = bookingService.getAvailabilityVersion(campsiteId, startDate, endDate);
+        if (version != null) {
+            String eTag = "\"" + version + "-" + (bitmap ? FORMAT_BITMAP : binary ? FORMAT_BINARY : "json") + "\"";
+            response.eTag(eTag);
+            if (webRequest.checkNotModified(eTag)) {
+                // Sent as 304 with the ETag and Vary headers
+                return response.build();
+            }
+        }
+
+        if (bitmap) {
+            return response
+                    .contentType(MediaType.valueOf(AVAILABILITY_BITMAP_VALUE))
+                    .body(bookingService.getAvailabilityBitmap(campsiteId, startDate, endDate));
+        }
+
+        if (binary) {
+            return response
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .body(toBinary(bookingService.getAvailabilityBitmap(campsiteId, startDate, endDate)));
+        }
+
+        return response
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(bookingService.getAvailableDates(campsiteId, startDate, endDate));
+    }
+
+    @Operation(summary = "Get available dates for many campsites and date ranges at once.")
+    @PostMapping(path = "/availableDates/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<AvailabilityDTO> getAvailableDatesBatch(
+            @RequestBody @Parameter(name = "Availability_Batch") @Valid AvailabilityBatchDTO availabilityBatchDTO) {
+        return bookingService.getAvailableDates(availabilityBatchDTO.getQueries());
+    }
 
-        return bookingService.getAvailableDates(startDate, endDate);
+    @Operation(summary = "Stream of booked and freed dates, as server-sent events. "
+            + "Resume with the Last-Event-ID header (or lastEventId parameter). "
+            + "A resync event means changes were missed and the available dates must be read again.")
+    @GetMapping(path = "/availableDates/feed", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getAvailabilityFeed(
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(name = "lastEventId", required = false)
+            @Parameter(name = "lastEventId") String lastEventId) {
+        return availabilityFeed.subscribe(lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
     }
 
     @Operation(summary = "Retrieve booking.")
@@ -47,17 +137,52 @@ public class BookingController {
         return bookingService.getBooking(bookingId);
     }
 
-    @Operation(summary = "Create new booking.")
+    @Operation(summary = "Create new booking. "
+            + "Retries with the same Idempotency-Key return the original booking instead of booking again.")
     @PostMapping(path = "/new", produces = MediaType.APPLICATION_JSON_VALUE)
-    public BookingDTO createNewBooking(@RequestBody @Parameter(name = "Booking") @Valid BookingDTO newBookingDTO) {
-        return bookingService.createNewBooking(newBookingDTO);
+    public BookingDTO createNewBooking(
+            @RequestBody @Parameter(name = "Booking") @Valid BookingDTO newBookingDTO,
+            @RequestHeader(name = IDEMPOTENCY_KEY, required = false) @Size(max = 255) String idempotencyKey) {
+        if (StringUtils.isBlank(idempotencyKey)) {
+            return bookingService.createNewBooking(newBookingDTO);
+        }
+
+        return idempotencyStore.execute("new:" + idempotencyKey, newBookingDTO, BookingDTO.class,
+                () -> bookingService.createNewBooking(newBookingDTO));
+    }
+
+    @Operation(summary = "Create many bookings at once, returns the result of each booking in the same order.")
+    @PostMapping(path = "/new/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<BookingResultDTO> createNewBookings(
+            @RequestBody @Parameter(name = "Booking_Batch") @Valid BookingBatchDTO bookingBatchDTO) {
+        return bookingService.createNewBookings(bookingBatchDTO.getBookings());
+    }
+
+    @Operation(summary = "Hold dates during checkout. Create the booking with the returned holdId before it expires.")
+    @PostMapping(path = "/hold", produces = MediaType.APPLICATION_JSON_VALUE)
+    public HoldDTO holdDates(@RequestBody @Parameter(name = "Hold") @Valid HoldDTO holdDTO) {
+        return bookingService.holdDates(holdDTO);
+    }
+
+    @ResponseStatus(value = HttpStatus.OK)
+    @Operation(summary = "Release held dates by holdId.")
+    @DeleteMapping(path = "/hold/{holdId}")
+    public void releaseHold(@PathVariable(name = "holdId", required = true) @NotBlank String holdId) {
+        bookingService.releaseHold(holdId);
     }
 
-    @Operation(summary = "Modify existing booking.")
+    @Operation(summary = "Modify existing booking. "
+            + "Retries with the same Idempotency-Key return the original result instead of modifying again.")
     @PostMapping(path = "/modify", produces = MediaType.APPLICATION_JSON_VALUE)
     public BookingDTO modifyBooking(
-            @RequestBody @Parameter(name = "Modify_Booking") @Valid ModifyBookingDTO modifyBookingDTO) {
-        return bookingService.modifyBooking(modifyBookingDTO);
+            @RequestBody @Parameter(name = "Modify_Booking") @Valid ModifyBookingDTO modifyBookingDTO,
+            @RequestHeader(name = IDEMPOTENCY_KEY, required = false) @Size(max = 255) String idempotencyKey) {
+        if (StringUtils.isBlank(idempotencyKey)) {
+            return bookingService.modifyBooking(modifyBookingDTO);
+        }
+
+        return idempotencyStore.execute("modify:" + idempotencyKey, modifyBookingDTO, BookingDTO.class,
+                () -> bookingService.modifyBooking(modifyBookingDTO));
     }
 
     @ResponseStatus(value = HttpStatus.OK)
@@ -66,4 +191,45 @@ public class BookingController {
     public void deleteBooking(@PathVariable(name = "bookingId", required = true) @NotBlank String bookingId) {
         bookingService.deleteBooking(bookingId);
     }
+
+    // Preferred format of the Accept header, by quality and then specificity, null for JSON
+    private String getAcceptedFormat(String accept) {
+        if (StringUtils.isBlank(accept)) {
+            return null;
+        }
+
+        List<MediaType> mediaTypes;
+        try {
+            mediaTypes = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException ex) {
+            return null;
+        }
+
+        MediaType.sortBySpecificityAndQuality(mediaTypes);
+        for (MediaType mediaType : mediaTypes) {
+            if (mediaType.getQualityValue() == 0) {
+                continue;
+            }
+            // Wildcards get JSON
+            if (mediaType.includes(MediaType.APPLICATION_JSON)) {
+                return null;
+            }
+            if (mediaType.includes(MediaType.valueOf(AVAILABILITY_BITMAP_VALUE))) {
+                return FORMAT_BITMAP;
+            }
+            if (mediaType.includes(MediaType.APPLICATION_OCTET_STREAM)) {
+                return FORMAT_BINARY;
+            }
+        }
+        return null;
+    }
+
+    // Binary layout: start date as epoch-day (int), number of days (int), then the availability mask
+    private byte[] toBinary(AvailabilityBitmapDTO bitmap) {
+        return ByteBuffer.allocate(8 + bitmap.getMask().length)
+                .putInt((int) bitmap.getStartDate().toEpochDay())
+                .putInt(bitmap.getDays())
+                .put(bitmap.getMask())
+                .array();
+    }
 }
@@ -3,7 +3,9 @@ package com.upgrade.campsite.controllers;
 import com.upgrade.campsite.dtos.ApiErrorDTO;
 import com.upgrade.campsite.exceptions.AlreadyBookedException;
 import com.upgrade.campsite.exceptions.BookingFinishedException;
+import com.upgrade.campsite.exceptions.FeedUnavailableException;
 import com.upgrade.campsite.exceptions.InvalidInputException;
+import com.upgrade.campsite.exceptions.RequestInProgressException;
 import java.util.ArrayList;
 import java.util.List;
 import javax.validation.ConstraintViolationException;
@@ -64,6 +66,22 @@ public class GlobalControllerExceptionHandler {
         return new ApiErrorDTO(ex, HttpStatus.BAD_REQUEST);
     }
 
+    // Same Idempotency-Key still running elsewhere, client can retry later
+    // No need for logs
+    @ExceptionHandler(value = {RequestInProgressException.class})
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ApiErrorDTO conflictExceptions(Exception ex, WebRequest req) {
+        return new ApiErrorDTO(ex, HttpStatus.CONFLICT);
+    }
+
+    // Too many subscribers, client can retry later
+    // No need for logs
+    @ExceptionHandler(value = {FeedUnavailableException.class})
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ApiErrorDTO unavailableExceptions(Exception ex, WebRequest req) {
+        return new ApiErrorDTO(ex, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     // Validation errors
     // No need for logs
     @ExceptionHandler(value = {MethodArgumentNotValidException.class})
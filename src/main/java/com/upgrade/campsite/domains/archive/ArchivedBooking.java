@@ -0,0 +1,51 @@
+package com.upgrade.campsite.domains.archive;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Finished booking moved out of the live tables, keeping the id it had in booking.
+ * The range is enough to know its dates, so they are not archived one by one.
+ */
+@Entity
+@Table(name = "booking_archive")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedBooking {
+
+    @Id
+    @Column
+    private Long id;
+
+    @Column
+    private Long campsiteId;
+
+    @Column
+    private String email;
+
+    @Column
+    private String name;
+
+    @Column
+    private String bookingId;
+
+    @Column
+    private LocalDate startDate;
+
+    @Column
+    private LocalDate endDate;
+
+    @Column
+    private LocalDateTime archivedAt;
+
+}
@@ -0,0 +1,42 @@
+package com.upgrade.campsite.domains.archive;
+
+import java.time.LocalDate;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface ArchivedBookingRepository extends JpaRepository<ArchivedBooking, Long> {
+
+    @Transactional(readOnly = true)
+    public ArchivedBooking findByBookingId(String bookingId);
+
+    @Query(value = "SELECT b.id "
+            + " FROM Booking b "
+            + " WHERE b.endDate < :cutoffDate "
+            + " ORDER BY b.id ")
+    public List<Long> findFinishedBookingIds(@Param("cutoffDate") LocalDate cutoffDate, Pageable pageable);
+
+    // Archiving is done with set based statements, so finished bookings are never loaded as entities
+    @Modifying
+    @Query(value = "INSERT INTO booking_archive "
+            + " (id, booking_id, campsite_id, name, email, start_date, end_date, archived_at) "
+            + " SELECT id, booking_id, campsite_id, name, email, start_date, end_date, CURRENT_TIMESTAMP "
+            + " FROM booking "
+            + " WHERE id IN (:ids) ", nativeQuery = true)
+    public int copyToArchive(@Param("ids") List<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM booking_date WHERE booking_id IN (:ids) ", nativeQuery = true)
+    public int deleteBookingDates(@Param("ids") List<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM booking WHERE id IN (:ids) ", nativeQuery = true)
+    public int deleteBookings(@Param("ids") List<Long> ids);
+
+}
@@ -0,0 +1,61 @@
+package com.upgrade.campsite.domains.archive;
+
+import java.time.LocalDate;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Moves finished bookings to the archive, so the live tables only hold the bookings within the booking horizon.
+ * Each batch is its own transaction, so locks are short and a failure only rolls back the current batch.
+ */
+@Slf4j
+@Service
+public class BookingArchiver {
+
+    @Autowired
+    private ArchivedBookingRepository archivedBookingRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${booking.archive.batch-size:500}")
+    private int batchSize;
+
+    // Bookings are archived once they ended at least this many days ago
+    @Value("${booking.archive.after-days:1}")
+    private int afterDays;
+
+    public synchronized void archive() {
+        LocalDate cutoffDate = LocalDate.now().minusDays(afterDays);
+        long archived = 0;
+        try {
+            int batch;
+            do {
+                batch = transactionTemplate.execute(status -> archiveBatch(cutoffDate));
+                archived += batch;
+            } while (batch == batchSize);
+        } catch (Exception ex) {
+            log.error("Error when archiving bookings, will retry on next run.", ex);
+        }
+
+        log.info("Archived {} finished bookings.", archived);
+    }
+
+    private int archiveBatch(LocalDate cutoffDate) {
+        List<Long> ids = archivedBookingRepository.findFinishedBookingIds(cutoffDate, PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        archivedBookingRepository.copyToArchive(ids);
+        archivedBookingRepository.deleteBookingDates(ids);
+        archivedBookingRepository.deleteBookings(ids);
+        return ids.size();
+    }
+
+}
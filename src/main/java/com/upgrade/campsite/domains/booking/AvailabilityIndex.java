@@ -0,0 +1,120 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory index of booked dates, one rolling bitset per campsite covering the whole booking horizon.
+ * Each campsite has its own lock, so reads and writes for different campsites never contend.
+ */
+@Component
+public class AvailabilityIndex {
+
+    private static final int BITS_PER_WORD = 64;
+
+    private static final int RELOAD_ATTEMPTS = 3;
+
+    @Value("${availability.index.days:64}")
+    private int horizonDays;
+
+    @Value("${availability.index.max-age-seconds:60}")
+    private long maxAgeSeconds;
+
+    private final ConcurrentMap<Long, SiteAvailability> sites = new ConcurrentHashMap<>();
+
+    // Versions are local to this instance, so they are never compared with the ones of another instance or run
+    private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
+
+    // Horizon rounded up to a multiple of 64
+    public int getCapacity() {
+        return (horizonDays + BITS_PER_WORD - 1) / BITS_PER_WORD * BITS_PER_WORD;
+    }
+
+    public boolean covers(LocalDate startDate, LocalDate endDate) {
+        long today = LocalDate.now().toEpochDay();
+        return startDate.toEpochDay() >= today && endDate.toEpochDay() < today + getCapacity();
+    }
+
+    public boolean isLoaded(Long campsiteId) {
+        SiteAvailability site = sites.get(campsiteId);
+        return site != null && site.isLoaded(maxAgeSeconds);
+    }
+
+    public Set<Long> getCampsiteIds() {
+        return new HashSet<>(sites.keySet());
+    }
+
+    public List<LocalDate> getAvailableDates(Long campsiteId, LocalDate startDate, LocalDate endDate) {
+        return getSite(campsiteId).getAvailableDates(startDate, endDate);
+    }
+
+    // Changes whenever the availability of any date in the range changes
+    public String getVersion(Long campsiteId, LocalDate startDate, LocalDate endDate) {
+        return instanceId
+                + "-" + campsiteId
+                + "-" + startDate.toEpochDay()
+                + "-" + endDate.toEpochDay()
+                + "-" + getSite(campsiteId).getVersion(startDate, endDate);
+    }
+
+    public void markBooked(Long campsiteId, Collection<LocalDate> dates) {
+        getSite(campsiteId).update(dates, true);
+    }
+
+    public void markAvailable(Long campsiteId, Collection<LocalDate> dates) {
+        getSite(campsiteId).update(dates, false);
+    }
+
+    // Loads the campsite if needed, only once for all concurrent callers
+    // False when it couldn't be loaded, the caller reads from the cache instead
+    public boolean load(Long campsiteId, Supplier<Set<LocalDate>> bookedDatesLoader) {
+        if (isLoaded(campsiteId)) {
+            return true;
+        }
+
+        SiteAvailability site = getSite(campsiteId);
+        synchronized (site) {
+            return isLoaded(campsiteId) || reload(site, bookedDatesLoader);
+        }
+    }
+
+    // Every campsite is loaded again on its next read, for when changes may have been missed
+    public void expireAll() {
+        sites.values().forEach(SiteAvailability::expire);
+    }
+
+    public boolean reload(Long campsiteId, Supplier<Set<LocalDate>> bookedDatesLoader) {
+        SiteAvailability site = getSite(campsiteId);
+        synchronized (site) {
+            return reload(site, bookedDatesLoader);
+        }
+    }
+
+    private boolean reload(SiteAvailability site, Supplier<Set<LocalDate>> bookedDatesLoader) {
+        // Retry if a booking was written while loading, as the snapshot could be missing it
+        for (int attempt = 0; attempt < RELOAD_ATTEMPTS; attempt++) {
+            long modCount = site.getModCount();
+            if (site.reload(bookedDatesLoader.get(), modCount)) {
+                return true;
+            }
+        }
+
+        // Bookings keep changing, don't hold the site any longer and load it again on a later read
+        site.expire();
+        return false;
+    }
+
+    private SiteAvailability getSite(Long campsiteId) {
+        return sites.computeIfAbsent(campsiteId, id -> new SiteAvailability(getCapacity()));
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.upgrade.campsite.domains.booking;
+
+import com.upgrade.campsite.domains.feed.AvailabilityFeed;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sends the dates booked and freed on this instance to the other ones through a Redis channel, and applies theirs
+ * to the local index and availability feed, so every instance answers availability without reading Redis or the DB.
+ * Messages carry a sequence number per sender. A gap means messages were missed, so the whole index is loaded again
+ * and feed subscribers are told to resync. The index max age is still the safety net for a last message lost.
+ * Message: sender:sequence:campsiteId:booked epoch-days:freed epoch-days, days separated by commas.
+ */
+@Slf4j
+@Component
+public class AvailabilitySync {
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private AvailabilityFeed availabilityFeed;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    // Single instance deployments without Redis have nothing to sync
+    @Value("#{'${cache.type:redis}' != '" + BookedDatesCache.TYPE_LOCAL + "' && ${availability.sync.enable:true}}")
+    private boolean enabled;
+
+    @Value("${availability.sync.channel:AVAILABILITY_CHANGES}")
+    private String channel;
+
+    private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
+
+    // Last sequence sent, messages are sent one at a time so they arrive in order
+    private long sequence;
+
+    // Last sequence received from each instance
+    private final ConcurrentMap<String, Long> receivedSequences = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+
+        listenerContainer.addMessageListener((message, pattern) ->
+                receive(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(channel));
+    }
+
+    // Only the dates that changed are sent, dates found in both sets were moved within the same booking
+    public void publish(Long campsiteId, Set<LocalDate> bookedDates, Set<LocalDate> freedDates) {
+        Set<LocalDate> booked = new HashSet<>(bookedDates);
+        booked.removeAll(freedDates);
+        Set<LocalDate> freed = new HashSet<>(freedDates);
+        freed.removeAll(bookedDates);
+        if (!enabled || (booked.isEmpty() && freed.isEmpty())) {
+            return;
+        }
+
+        try {
+            synchronized (this) {
+                // A failed send still takes its number, so the others see the gap and resync
+                sequence++;
+                stringRedisTemplate.convertAndSend(channel,
+                        instanceId + ":" + sequence + ":" + campsiteId + ":" + toDays(booked) + ":" + toDays(freed));
+            }
+        } catch (Exception ex) {
+            log.error("Error when publishing availability changes.", ex);
+        }
+    }
+
+    private void receive(String message) {
+        try {
+            String[] parts = message.split(":", -1);
+            String sender = parts[0];
+            if (instanceId.equals(sender)) {
+                return;
+            }
+
+            long received = Long.parseLong(parts[1]);
+            Long previous = receivedSequences.put(sender, received);
+            if (previous != null && received != previous + 1) {
+                log.warn("Missed {} availability changes from instance {}, loading the index again.",
+                        received - previous - 1, sender);
+                availabilityIndex.expireAll();
+                availabilityFeed.publishResync();
+            }
+
+            Long campsiteId = Long.valueOf(parts[2]);
+            Set<LocalDate> booked = toDates(parts[3]);
+            Set<LocalDate> freed = toDates(parts[4]);
+            availabilityIndex.markAvailable(campsiteId, freed);
+            availabilityIndex.markBooked(campsiteId, booked);
+            availabilityFeed.publish(campsiteId, booked, freed);
+        } catch (Exception ex) {
+            log.error("Error when applying availability changes, loading the index again.", ex);
+            availabilityIndex.expireAll();
+        }
+    }
+
+    private String toDays(Set<LocalDate> dates) {
+        return dates.stream()
+                .map(d -> String.valueOf(d.toEpochDay()))
+                .collect(Collectors.joining(","));
+    }
+
+    private Set<LocalDate> toDates(String days) {
+        if (days.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        return Arrays.stream(days.split(","))
+                .map(d -> LocalDate.ofEpochDay(Long.parseLong(d)))
+                .collect(Collectors.toSet());
+    }
+
+}
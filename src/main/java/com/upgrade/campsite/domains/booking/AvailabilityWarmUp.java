@@ -0,0 +1,109 @@
+package com.upgrade.campsite.domains.booking;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Loads the cache and the in-memory index, and runs availability reads until they are compiled, before the
+ * instance takes traffic, so a new instance doesn't send its first requests to the DB.
+ * Runs in the ready event, and the app only reports itself ready to take traffic (health/readiness) after all the
+ * ready listeners return, so readiness is held until the warm-up is done. A failed warm-up only logs, the instance
+ * still becomes ready with whatever it loaded.
+ */
+@Slf4j
+@Component
+public class AvailabilityWarmUp {
+
+    // Right after the legacy cache keys are removed, so the loaded cache is never removed
+    private static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 1;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private BookedDatesCache cachingService;
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${availability.warm-up.enable:true}")
+    private boolean enabled;
+
+    // Reads of each loaded campsite, enough for the JIT to compile the availability paths
+    @Value("${availability.warm-up.iterations:5000}")
+    private int iterations;
+
+    @Value("${availability.warm-up.max-seconds:30}")
+    private long maxSeconds;
+
+    @Order(ORDER)
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (!enabled) {
+            return;
+        }
+
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        warmUp();
+    }
+
+    public void warmUp() {
+        long start = System.nanoTime();
+        try {
+            // Every campsite with future bookings, into the cache and the index
+            bookingService.resetCache();
+
+            Set<Long> campsiteIds = new HashSet<>(cachingService.getCampsiteIds());
+            campsiteIds.addAll(availabilityIndex.getCampsiteIds());
+
+            // Either there are no future bookings or they could not be loaded, reads will go to the DB until cached
+            if (campsiteIds.isEmpty()) {
+                log.warn("Warm-up found no campsites to load, starting with a cold cache.");
+                return;
+            }
+
+            long deadline = start + TimeUnit.SECONDS.toNanos(maxSeconds);
+            int reads = 0;
+            for (int i = 0; i < iterations && System.nanoTime() < deadline; i++) {
+                for (Long campsiteId : campsiteIds) {
+                    read(campsiteId);
+                    reads++;
+                }
+            }
+
+            log.info("Warm-up done in {} ms, {} campsites loaded and {} reads.",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), campsiteIds.size(), reads);
+        } catch (Exception ex) {
+            log.error("Error during warm-up, starting with a cold cache.", ex);
+        }
+    }
+
+    // Same reads as the API, from the index, from the cache beyond the index, and their JSON
+    private void read(Long campsiteId) throws Exception {
+        LocalDate today = LocalDate.now();
+        objectMapper.writeValueAsString(bookingService.getAvailableDates(campsiteId, today, today.plusDays(29)));
+        objectMapper.writeValueAsString(bookingService.getAvailabilityBitmap(campsiteId, today, today.plusDays(29)));
+        objectMapper.writeValueAsString(bookingService.getAvailableDates(campsiteId, today, today.plusDays(99)));
+    }
+
+}
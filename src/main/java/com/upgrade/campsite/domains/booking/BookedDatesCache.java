@@ -0,0 +1,39 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+/**
+ * Booked dates of every campsite from the day it was loaded from onwards, so availability outside of the in-memory
+ * index doesn't go to the DB. Selected with the cache.type property:
+ * local keeps them in this JVM, for single instance deployments that don't need Redis,
+ * redis keeps them in Redis, shared by every instance,
+ * tiered reads them from this JVM and keeps them in Redis, dropping the local copy when another instance changes them.
+ */
+public interface BookedDatesCache {
+
+    String TYPE_LOCAL = "local";
+    String TYPE_REDIS = "redis";
+    String TYPE_TIERED = "tiered";
+
+    // Cache holds every booked date of the campsite from the loaded day onwards
+    boolean isLoaded(Long campsiteId, LocalDate startDate);
+
+    // Campsites that have been loaded into the cache
+    Set<Long> getCampsiteIds();
+
+    // Changes applied to the campsite so far, read before its dates are read from the DB to sync it
+    long getVersion(Long campsiteId);
+
+    // Replaces the booked dates of the campsite from the given day onwards, without readers seeing it empty
+    // Nothing is replaced and false is returned when changes were applied since the given version
+    boolean syncCache(Long campsiteId, Set<LocalDate> bookingDates, LocalDate loadedFrom, long version);
+
+    Set<LocalDate> getBookedDates(Long campsiteId, LocalDate startDate, LocalDate endDate);
+
+    // Exceptions are not caught, the caller must retry the change if the cache could not be updated
+    void applyChanges(Long campsiteId, Set<LocalDate> addedDates, Set<LocalDate> removedDates);
+
+    void clearCache();
+
+}
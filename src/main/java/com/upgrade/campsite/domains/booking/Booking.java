@@ -3,6 +3,8 @@ package com.upgrade.campsite.domains.booking;
 import java.time.LocalDate;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.stream.Collectors;
+import javax.persistence.CollectionTable;
 import javax.persistence.Column;
 import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
@@ -10,7 +12,7 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
-import javax.persistence.NamedEntityGraph;
+import javax.persistence.JoinColumn;
 import javax.persistence.SequenceGenerator;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -22,9 +24,6 @@ import lombok.NoArgsConstructor;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-@NamedEntityGraph(
-        name = "booking.default",
-        includeAllAttributes = true)
 public class Booking {
 
     @Id
@@ -33,6 +32,9 @@ public class Booking {
     @SequenceGenerator(name = "BookingSeq", sequenceName = "booking_seq")
     private Long id;
 
+    @Column
+    private Long campsiteId;
+
     @Column
     private String email;
 
@@ -42,9 +44,23 @@ public class Booking {
     @Column
     private String bookingId;
 
-    @Column(unique = true)
+    // Range of the booking, so reading it doesn't need the dates
+    @Column
+    private LocalDate startDate;
+
+    @Column
+    private LocalDate endDate;
+
+    // One row per night, the unique (campsite_id, date) constraint is what prevents double bookings
     @Builder.Default
     @ElementCollection(fetch = FetchType.LAZY)
-    private Set<LocalDate> date = new HashSet<>();
+    @CollectionTable(name = "booking_date", joinColumns = @JoinColumn(name = "booking_id"))
+    private Set<BookingDate> date = new HashSet<>();
+
+    public static Set<BookingDate> toBookingDates(Long campsiteId, Set<LocalDate> dates) {
+        return dates.stream()
+                .map(d -> new BookingDate(campsiteId, d))
+                .collect(Collectors.toSet());
+    }
 
 }
@@ -1,29 +1,186 @@
 package com.upgrade.campsite.domains.booking;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Collectors;
 import javax.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.SetOperations;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
+/**
+ * Redis implementation of the booked dates cache. It also keeps the holds, so it is there whenever Redis is used.
+ * Booked dates are cached in a sorted set per campsite scored by epoch-day, so reads can be scoped to the
+ * requested range and campsites never share a key.
+ * A separate marker key per campsite holds the first day the cache was loaded from, so an empty range is a valid
+ * result and not a cache miss.
+ * Held dates have a key per date that expires with the hold, so every instance sees them.
+ * Dates are stored as 4 byte epoch-days, see BookingCacheRedisConfig.
+ * Writes touching more than one date or key run as a single script, so they take one round trip and readers never
+ * see them half applied.
+ */
 @Slf4j
 @Service
-public class BookingCacheService {
+@ConditionalOnExpression("'${cache.type:redis}' != '" + BookedDatesCache.TYPE_LOCAL + "'")
+public class BookingCacheService implements BookedDatesCache {
 
     @Value("${cache.redis.key}")
     private String KEY;
 
+    // Format of the cached dates, the cache is loaded again from the DB when it changes
+    private static final String CODEC = "epoch-day";
+
+    private static final RedisScript<Long> APPLY_CHANGES_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/apply-date-changes.lua"), Long.class);
+
+    private static final RedisScript<Long> SYNC_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/sync-dates.lua"), Long.class);
+
+    private static final RedisScript<Long> HOLD_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/hold-dates.lua"), Long.class);
+
+    // Scripts return counts as integer replies, which are never deserialized
+    private static final RedisSerializer<Long> COUNT_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+
+    @Resource(name = "bookingDatesRedisTemplate")
+    private ZSetOperations<String, LocalDate> zSetOps;
+
+    @Resource(name = "bookingDatesRedisTemplate")
+    private RedisTemplate<String, LocalDate> datesTemplate;
+
+    // Earlier versions cached the dates with JDK serialization, in keys serialized the same way
     @Resource(name = "redisTemplate")
-    private SetOperations<String, LocalDate> setOps;
+    private RedisTemplate<Object, Object> legacyTemplate;
+
+    @Resource(name = "stringRedisTemplate")
+    private ValueOperations<String, String> valueOps;
+
+    @Resource(name = "stringRedisTemplate")
+    private SetOperations<String, String> campsiteOps;
+
+    /**
+     * Removes the dates cached in an earlier format, once per Redis. Their campsites are marked as not loaded,
+     * so they are loaded again from the DB in the current format on the next read or cache reset.
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyKeys() {
+        try {
+            if (CODEC.equals(valueOps.get(getCodecKey()))) {
+                return;
+            }
+
+            Set<Long> campsiteIds = getCampsiteIds();
+            for (Long campsiteId : campsiteIds) {
+                legacyTemplate.delete(getKey(campsiteId));
+                valueOps.getOperations().delete(getLoadedKey(campsiteId));
+            }
+            valueOps.set(getCodecKey(), CODEC);
+
+            log.info("Cache migrated to {} format, {} campsites will be loaded again.", CODEC, campsiteIds.size());
+        } catch (Exception ex) {
+            log.error("Error when migrating cache.", ex);
+        }
+    }
+
+    // Cache holds every booked date of the campsite from the loaded day onwards
+    @Override
+    public boolean isLoaded(Long campsiteId, LocalDate startDate) {
+        try {
+            String loadedFrom = valueOps.get(getLoadedKey(campsiteId));
+            return loadedFrom != null && Long.parseLong(loadedFrom) <= startDate.toEpochDay();
+        } catch (Exception ex) {
+            log.error("Error when accessing cache.", ex);
+        }
+
+        return false;
+    }
+
+    // Campsites that have been loaded into the cache
+    @Override
+    public Set<Long> getCampsiteIds() {
+        try {
+            return campsiteOps.members(getCampsitesKey()).stream()
+                    .map(Long::valueOf)
+                    .collect(Collectors.toSet());
+        } catch (Exception ex) {
+            log.error("Error when accessing cache.", ex);
+        }
+
+        return new HashSet<>();
+    }
+
+    // Changes applied to the campsite so far, 0 when it never changed
+    @Override
+    public long getVersion(Long campsiteId) {
+        try {
+            String version = valueOps.get(getVersionKey(campsiteId));
+            return version != null ? Long.parseLong(version) : 0;
+        } catch (Exception ex) {
+            log.error("Error when accessing cache.", ex);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Brings the cache in line with the given booked dates from the given day onwards, without clearing it first.
+     * Only the differences are written, so readers never see an empty cache while it is rebuilt.
+     * Nothing is written when changes were relayed since the given version, as the dates may have been read before
+     * them, and removing the dates they booked would allow double bookings.
+     */
+    @Override
+    public boolean syncCache(Long campsiteId, Set<LocalDate> bookingDates, LocalDate loadedFrom, long version) {
+        try {
+            // Past dates are removed too, they are not needed anymore
+            List<byte[]> args = new ArrayList<>();
+            args.add(toBytes(loadedFrom.toEpochDay()));
+            args.add(toBytes(campsiteId));
+            args.add(toBytes(version));
+            addScoredDates(args, bookingDates);
+
+            Long changes = datesTemplate.execute(SYNC_SCRIPT, RedisSerializer.byteArray(), COUNT_SERIALIZER,
+                    Arrays.asList(getKey(campsiteId), getLoadedKey(campsiteId), getCampsitesKey(),
+                            getVersionKey(campsiteId)),
+                    args.toArray());
+            if (changes == null || changes < 0) {
+                log.info("Cache of campsite {} changed while its dates were read, not synced.", campsiteId);
+                return false;
+            }
+
+            log.info("Cache synced for campsite {}, {} dates added or removed.", campsiteId, changes);
+            return true;
+        } catch (Exception ex) {
+            log.error("Error when syncing cache.", ex);
+        }
+
+        return false;
+    }
 
-    public Set<LocalDate> getAllFromCache() {
+    @Override
+    public Set<LocalDate> getBookedDates(Long campsiteId, LocalDate startDate, LocalDate endDate) {
         try {
-            return setOps.members(KEY);
+            return zSetOps.rangeByScore(getKey(campsiteId), startDate.toEpochDay(), endDate.toEpochDay());
         } catch (Exception ex) {
             log.error("Error when accessing cache.", ex);
         }
@@ -31,43 +188,159 @@ public class BookingCacheService {
         return new HashSet<>();
     }
 
-    @Async
-    public void addToCache(Set<LocalDate> bookingDates) {
+    // Exceptions are not caught, the caller must retry the change if the cache could not be updated
+    @Override
+    public void applyChanges(Long campsiteId, Set<LocalDate> addedDates, Set<LocalDate> removedDates) {
+        // Dates kept by a modified booking are left as they are
+        Set<LocalDate> freedDates = new HashSet<>(removedDates);
+        freedDates.removeAll(addedDates);
+        if (freedDates.isEmpty() && addedDates.isEmpty()) {
+            return;
+        }
+
+        List<byte[]> args = new ArrayList<>();
+        args.add(toBytes(freedDates.size()));
+        freedDates.forEach(d -> args.add(dateSerializer().serialize(d)));
+        addScoredDates(args, addedDates);
+
+        datesTemplate.execute(APPLY_CHANGES_SCRIPT, RedisSerializer.byteArray(), COUNT_SERIALIZER,
+                Arrays.asList(getKey(campsiteId), getVersionKey(campsiteId)), args.toArray());
+    }
+
+    /**
+     * Holds the dates until the TTL expires. All or nothing, nothing is held if another hold has any of the dates.
+     * Exceptions are not caught, the caller decides whether to go on without the cache.
+     */
+    public boolean holdDates(Long campsiteId, Set<LocalDate> dates, String holdId, long ttlSeconds) {
+        // Hold contents go first, so it can be confirmed or released on any instance
+        List<String> keys = new ArrayList<>();
+        keys.add(getHoldKey(holdId));
+        dates.forEach(date -> keys.add(getHoldKey(campsiteId, date)));
+
+        String hold = campsiteId + ":" + dates.stream()
+                .map(LocalDate::toString)
+                .collect(Collectors.joining(","));
+        Long held = valueOps.getOperations().execute(HOLD_SCRIPT, keys, holdId, String.valueOf(ttlSeconds), hold);
+        return Long.valueOf(1).equals(held);
+    }
+
+    // Empty when the hold expired, was released or is for another campsite
+    public Set<LocalDate> getHeldDates(String holdId, Long campsiteId) {
         try {
-            if (isNotEmpty(bookingDates)) {
-                setOps.add(KEY, bookingDates.toArray(LocalDate[]::new));
+            String hold = valueOps.get(getHoldKey(holdId));
+            if (hold != null && hold.startsWith(campsiteId + ":")) {
+                return toDates(hold);
             }
         } catch (Exception ex) {
-            log.error("Error when adding to cache.", ex);
+            log.error("Error when accessing cache.", ex);
         }
+
+        return new HashSet<>();
     }
 
-    @Async
-    public void updateCache(Set<LocalDate> newBookingDates, Set<LocalDate> oldBookingDates) {
-        removeFromCache(oldBookingDates);
-        addToCache(newBookingDates);
+    // Ids of the holds that have any of the dates
+    public Set<String> getHolders(Long campsiteId, Set<LocalDate> dates) {
+        try {
+            List<String> holders = valueOps.multiGet(dates.stream()
+                    .map(d -> getHoldKey(campsiteId, d))
+                    .collect(Collectors.toList()));
+            return holders.stream()
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+        } catch (Exception ex) {
+            log.error("Error when accessing cache.", ex);
+        }
+
+        return new HashSet<>();
     }
 
-    @Async
-    public void removeFromCache(Set<LocalDate> bookingDates) {
+    public void releaseHold(String holdId) {
         try {
-            if (isNotEmpty(bookingDates)) {
-                setOps.remove(KEY, (Object[]) bookingDates.toArray(Object[]::new));
+            String hold = valueOps.get(getHoldKey(holdId));
+            if (hold != null) {
+                releaseDates(Long.valueOf(hold.substring(0, hold.indexOf(':'))), toDates(hold), holdId);
+                valueOps.getOperations().delete(getHoldKey(holdId));
             }
         } catch (Exception ex) {
-            log.error("Error when removing from cache.", ex);
+            log.error("Error when releasing hold.", ex);
         }
     }
 
+    @Override
     public void clearCache() {
         try {
-            removeFromCache(getAllFromCache());
+            // Every key in a single delete
+            // Versions are kept, so a sync that read its dates before the clear still sees later changes
+            List<String> keys = new ArrayList<>();
+            for (Long campsiteId : getCampsiteIds()) {
+                keys.add(getLoadedKey(campsiteId));
+                keys.add(getKey(campsiteId));
+            }
+            keys.add(getCampsitesKey());
+            valueOps.getOperations().delete(keys);
         } catch (Exception ex) {
             log.error("Error when clearing cache.", ex);
         }
     }
 
-    private boolean isNotEmpty(Collection obj) {
-        return !(obj == null || obj.isEmpty());
+    private String getKey(Long campsiteId) {
+        return KEY + ":" + campsiteId;
+    }
+
+    private String getLoadedKey(Long campsiteId) {
+        return getKey(campsiteId) + ":LOADED_FROM";
+    }
+
+    private String getVersionKey(Long campsiteId) {
+        return getKey(campsiteId) + ":VERSION";
+    }
+
+    private String getHoldKey(Long campsiteId, LocalDate date) {
+        return getKey(campsiteId) + ":HOLD:" + date;
+    }
+
+    private String getHoldKey(String holdId) {
+        return KEY + ":HOLD:" + holdId;
+    }
+
+    // Only the dates still held by the given hold are released
+    private void releaseDates(Long campsiteId, Collection<LocalDate> dates, String holdId) {
+        for (LocalDate date : dates) {
+            String key = getHoldKey(campsiteId, date);
+            if (holdId.equals(valueOps.get(key))) {
+                valueOps.getOperations().delete(key);
+            }
+        }
+    }
+
+    private Set<LocalDate> toDates(String hold) {
+        return Arrays.stream(hold.substring(hold.indexOf(':') + 1).split(","))
+                .map(LocalDate::parse)
+                .collect(Collectors.toSet());
+    }
+
+    private String getCampsitesKey() {
+        return KEY + ":CAMPSITES";
+    }
+
+    private String getCodecKey() {
+        return KEY + ":CODEC";
+    }
+
+    // Score and member of each date, as ZADD takes them
+    private void addScoredDates(List<byte[]> args, Set<LocalDate> dates) {
+        for (LocalDate date : dates) {
+            args.add(toBytes(date.toEpochDay()));
+            args.add(dateSerializer().serialize(date));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<LocalDate> dateSerializer() {
+        return (RedisSerializer<LocalDate>) datesTemplate.getValueSerializer();
+    }
+
+    private byte[] toBytes(long number) {
+        return String.valueOf(number).getBytes(StandardCharsets.UTF_8);
     }
 }
@@ -0,0 +1,30 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Night booked at a campsite, unique per campsite and date.
+ * Also the id of ScheduledDate, as no two rows share it.
+ */
+@Embeddable
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookingDate implements Serializable {
+
+    // Not nullable, otherwise Hibernate can't delete a single night and deletes and inserts every night of the booking
+    @Column(nullable = false)
+    private Long campsiteId;
+
+    @Column(nullable = false)
+    private LocalDate date;
+
+}
@@ -0,0 +1,143 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dates held during checkout, so they can't be taken while the user pays.
+ * Holds are date claims owned by the hold id, so bookings on this instance fail fast on them, and keys in the cache
+ * that expire with the hold, so bookings on other instances see them too.
+ * Local claims are expired by a timing wheel swept once per tick.
+ * Without Redis (cache.type local) holds are only kept on this instance.
+ */
+@Slf4j
+@Component
+public class BookingHolds {
+
+    @Autowired
+    private DateClaims dateClaims;
+
+    @Autowired(required = false)
+    private BookingCacheService cachingService;
+
+    @Value("${booking.hold.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${booking.hold.tick-ms:1000}")
+    private long tickMs;
+
+    // Ticks per turn of the wheel, holds longer than a turn wait more than one turn
+    @Value("${booking.hold.wheel-size:1024}")
+    private int wheelSize;
+
+    private final ConcurrentMap<String, Hold> holds = new ConcurrentHashMap<>();
+
+    private TimingWheel<Hold> timingWheel;
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void init() {
+        timingWheel = new TimingWheel<>(wheelSize, tickMs, this::expire);
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hold-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleAtFixedRate(timingWheel::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    // Null when any of the dates is held or being booked
+    Hold hold(Long campsiteId, Set<LocalDate> dates) {
+        String holdId = UUID.randomUUID().toString();
+        if (!dateClaims.claim(campsiteId, dates, holdId)) {
+            return null;
+        }
+
+        try {
+            if (cachingService != null && !cachingService.holdDates(campsiteId, dates, holdId, ttlSeconds)) {
+                dateClaims.release(campsiteId, dates, holdId);
+                return null;
+            }
+        } catch (Exception ex) {
+            log.error("Error when holding dates in cache, dates are only held on this instance.", ex);
+        }
+
+        Hold hold = new Hold(holdId, campsiteId, dates, LocalDateTime.now().plusSeconds(ttlSeconds));
+        holds.put(holdId, hold);
+        timingWheel.add(hold, TimeUnit.SECONDS.toMillis(ttlSeconds));
+        return hold;
+    }
+
+    // Dates of the hold for the campsite, wherever it was made, empty when it expired or doesn't exist
+    Set<LocalDate> getHeldDates(String holdId, Long campsiteId) {
+        Hold hold = holds.get(holdId);
+        if (hold != null) {
+            return hold.getCampsiteId().equals(campsiteId) ? hold.getDates() : new HashSet<>();
+        }
+        return cachingService != null ? cachingService.getHeldDates(holdId, campsiteId) : new HashSet<>();
+    }
+
+    // Any of the dates held by a hold other than the given one, on any instance
+    boolean isHeldByOther(Long campsiteId, Set<LocalDate> dates, String holdId) {
+        // Holds of this instance are checked here too, date claims can be disabled and the cache can be down
+        for (Hold hold : holds.values()) {
+            if (!hold.getHoldId().equals(holdId) && hold.getCampsiteId().equals(campsiteId)
+                    && !Collections.disjoint(hold.getDates(), dates)) {
+                return true;
+            }
+        }
+
+        if (cachingService == null) {
+            return false;
+        }
+
+        Set<String> holders = cachingService.getHolders(campsiteId, dates);
+        if (holdId != null) {
+            holders.remove(holdId);
+        }
+        return !holders.isEmpty();
+    }
+
+    void release(String holdId) {
+        Hold hold = holds.remove(holdId);
+        if (hold != null) {
+            dateClaims.release(hold.getCampsiteId(), hold.getDates(), holdId);
+        }
+        if (cachingService != null) {
+            cachingService.releaseHold(holdId);
+        }
+    }
+
+    // Releases every hold made on this instance
+    public void releaseAll() {
+        holds.keySet().forEach(this::release);
+    }
+
+    // Keys in the cache expire on their own
+    private void expire(Hold hold) {
+        if (holds.remove(hold.getHoldId(), hold)) {
+            dateClaims.release(hold.getCampsiteId(), hold.getDates(), hold.getHoldId());
+        }
+    }
+
+}
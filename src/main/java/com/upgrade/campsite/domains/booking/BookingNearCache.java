@@ -0,0 +1,198 @@
+package com.upgrade.campsite.domains.booking;
+
+import com.upgrade.campsite.dtos.BookingDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bookings read by bookingId, kept in memory so reading a booking again doesn't go to the DB.
+ * Entries are evicted when least recently used or after the TTL, and invalidated when the booking is modified or
+ * deleted, on this instance right after commit and on the others through a Redis channel (unless cache.type is local).
+ * Exposed in the actuator metrics endpoint as campsite.booking.cache.*.
+ */
+@Slf4j
+@Component
+public class BookingNearCache {
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("#{'${cache.type:redis}' != '" + BookedDatesCache.TYPE_LOCAL + "'}")
+    private boolean redisEnabled;
+
+    @Value("${booking.near-cache.enable:true}")
+    private boolean enabled;
+
+    @Value("${booking.near-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${booking.near-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${booking.near-cache.channel:BOOKING_INVALIDATIONS}")
+    private String channel;
+
+    // Invalidations sent by this instance are already applied, so they are skipped when received
+    private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
+
+    // Least recently used bookings are evicted first
+    private final Map<String, CachedBooking> bookings = new LinkedHashMap<String, CachedBooking>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedBooking> eldest) {
+            if (size() > maxEntries) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // A booking read before an invalidation may be stale, so it is only kept if there was none since
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private Counter hits;
+    private Counter misses;
+    private Counter evictions;
+
+    @PostConstruct
+    public void init() {
+        hits = Counter.builder("campsite.booking.cache.gets")
+                .tag("result", "hit")
+                .description("Bookings read from the near cache")
+                .register(meterRegistry);
+        misses = Counter.builder("campsite.booking.cache.gets")
+                .tag("result", "miss")
+                .description("Bookings read from the DB")
+                .register(meterRegistry);
+        evictions = Counter.builder("campsite.booking.cache.evictions")
+                .description("Bookings evicted from the near cache to keep it bounded")
+                .register(meterRegistry);
+        Gauge.builder("campsite.booking.cache.size", bookings, this::size)
+                .description("Bookings in the near cache")
+                .register(meterRegistry);
+
+        if (!redisEnabled) {
+            return;
+        }
+
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String value = new String(message.getBody(), StandardCharsets.UTF_8);
+            int separator = value.indexOf(':');
+            if (!instanceId.equals(value.substring(0, separator))) {
+                remove(value.substring(separator + 1));
+            }
+        }, new ChannelTopic(channel));
+    }
+
+    /**
+     * Gets the booking from memory, or from the loader when missing or expired. Null results are not kept.
+     */
+    public BookingDTO get(String bookingId, Supplier<BookingDTO> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        CachedBooking cached;
+        synchronized (bookings) {
+            cached = bookings.get(bookingId);
+        }
+
+        if (cached != null && cached.expiresAt >= System.currentTimeMillis()) {
+            hits.increment();
+            return copy(cached.booking);
+        }
+
+        misses.increment();
+        long invalidationCount = invalidations.get();
+        BookingDTO booking = loader.get();
+        if (booking != null) {
+            synchronized (bookings) {
+                if (invalidationCount == invalidations.get()) {
+                    bookings.put(bookingId, new CachedBooking(copy(booking), System.currentTimeMillis() + ttlSeconds * 1000));
+                }
+            }
+        }
+
+        return booking;
+    }
+
+    // Removes the booking here and on the other instances
+    public void invalidate(String bookingId) {
+        remove(bookingId);
+        if (!redisEnabled) {
+            return;
+        }
+
+        try {
+            stringRedisTemplate.convertAndSend(channel, instanceId + ":" + bookingId);
+        } catch (Exception ex) {
+            // Other instances keep the booking until it expires
+            log.error("Error when publishing booking invalidation.", ex);
+        }
+    }
+
+    public void clear() {
+        synchronized (bookings) {
+            invalidations.incrementAndGet();
+            bookings.clear();
+        }
+    }
+
+    private void remove(String bookingId) {
+        synchronized (bookings) {
+            invalidations.incrementAndGet();
+            bookings.remove(bookingId);
+        }
+    }
+
+    private int size(Map<String, CachedBooking> bookings) {
+        synchronized (bookings) {
+            return bookings.size();
+        }
+    }
+
+    // Callers get their own copy, as the DTO is mutable
+    private BookingDTO copy(BookingDTO booking) {
+        return BookingDTO.builder()
+                .bookingId(booking.getBookingId())
+                .campsiteId(booking.getCampsiteId())
+                .name(booking.getName())
+                .email(booking.getEmail())
+                .startDate(booking.getStartDate())
+                .endDate(booking.getEndDate())
+                .build();
+    }
+
+    private static class CachedBooking {
+
+        private final BookingDTO booking;
+        private final long expiresAt;
+
+        private CachedBooking(BookingDTO booking, long expiresAt) {
+            this.booking = booking;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -1,8 +1,8 @@
 package com.upgrade.campsite.domains.booking;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Set;
-import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -12,15 +12,25 @@ import org.springframework.transaction.annotation.Transactional;
 @Repository
 public interface BookingRepository extends JpaRepository<Booking, Long> {
 
-    @Query(value = "SELECT dates "
-            + " FROM Booking b "
-            + " JOIN b.date as dates"
-            + " WHERE dates >= :startDate "
-            + " AND dates <= :endDate ")
+    // Answered from the campsite_date_unique index, without joining booking
+    @Query(value = "SELECT s.id.date "
+            + " FROM ScheduledDate s "
+            + " WHERE s.id.campsiteId = :campsiteId "
+            + " AND s.id.date >= :startDate "
+            + " AND s.id.date <= :endDate ")
     @Transactional(readOnly = true)
-    public Set<LocalDate> findScheduledDates(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+    public Set<LocalDate> findScheduledDates(@Param("campsiteId") Long campsiteId,
+            @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
 
-    @EntityGraph(value = "booking.default")
+    // Scheduled dates of every campsite
+    @Query(value = "SELECT new com.upgrade.campsite.domains.booking.BookingDate(s.id.campsiteId, s.id.date) "
+            + " FROM ScheduledDate s "
+            + " WHERE s.id.date >= :startDate "
+            + " AND s.id.date <= :endDate ")
+    @Transactional(readOnly = true)
+    public List<BookingDate> findAllScheduledDates(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    // Dates are loaded lazily, only when they are modified
     @Transactional(readOnly = true)
     public Booking findByBookingId(String bookingId);
 
@@ -1,7 +1,16 @@
 package com.upgrade.campsite.domains.booking;
 
 import com.upgrade.campsite.constants.ErrorMessages;
+import com.upgrade.campsite.domains.archive.ArchivedBooking;
+import com.upgrade.campsite.domains.archive.ArchivedBookingRepository;
+import com.upgrade.campsite.domains.feed.AvailabilityFeed;
+import com.upgrade.campsite.domains.outbox.CacheOutboxRelay;
+import com.upgrade.campsite.dtos.AvailabilityBitmapDTO;
+import com.upgrade.campsite.dtos.AvailabilityDTO;
+import com.upgrade.campsite.dtos.AvailabilityQueryDTO;
 import com.upgrade.campsite.dtos.BookingDTO;
+import com.upgrade.campsite.dtos.BookingResultDTO;
+import com.upgrade.campsite.dtos.HoldDTO;
 import com.upgrade.campsite.dtos.ModifyBookingDTO;
 import com.upgrade.campsite.exceptions.AlreadyBookedException;
 import com.upgrade.campsite.exceptions.BookingCancelationException;
@@ -10,30 +19,97 @@ import com.upgrade.campsite.exceptions.BookingFinishedException;
 import com.upgrade.campsite.exceptions.InvalidInputException;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.StaleStateException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Slf4j
 @Service
 public class BookingService {
 
+    // Bookings start at most 30 days ahead and last up to 3 nights
+    private static final int MAX_DAYS_AHEAD = 30;
+    private static final int MAX_NIGHTS = 3;
+
+    // Days from today to the last date that can be booked, no date after it is ever loaded into the cache
+    static final int HORIZON_DAYS = MAX_DAYS_AHEAD + MAX_NIGHTS - 1;
+
+    // Cache syncs of a campsite that keeps changing while its dates are read
+    private static final int SYNC_ATTEMPTS = 3;
+
     @Autowired
     private BookingRepository bookingRepository;
 
     @Autowired
-    private BookingCacheService cachingService;
+    private ArchivedBookingRepository archivedBookingRepository;
+
+    @Autowired
+    private BookedDatesCache cachingService;
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private DateClaims dateClaims;
+
+    @Autowired
+    private BookingHolds bookingHolds;
+
+    @Autowired
+    private BookingNearCache bookingNearCache;
+
+    @Autowired
+    private CacheOutboxRelay outboxRelay;
+
+    @Autowired
+    private AvailabilityFeed availabilityFeed;
+
+    @Autowired
+    private AvailabilitySync availabilitySync;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Campsites are numbered from 1 to this, the cache and the index keep state for every campsite read
+    @Value("${booking.campsite-count:100}")
+    private long campsiteCount;
+
+    // Reject conflicting bookings before writing them, instead of only through the unique constraint
+    @Value("${booking.claims.enable:true}")
+    private boolean claimsEnabled;
+
+    // Requests read from the DB for this long after a failed cache load, instead of waiting to load it again
+    @Value("${cache.load.backoff-ms:5000}")
+    private long cacheLoadBackoffMs;
+
+    // Cache load attempts per campsite
+    private final ConcurrentMap<Long, CacheLoad> cacheLoads = new ConcurrentHashMap<>();
 
-    public List<LocalDate> getAvailableDates(LocalDate startDate, LocalDate endDate) {
+    public List<LocalDate> getAvailableDates(Long campsiteId, LocalDate startDate, LocalDate endDate) {
         // Validation
+        validateCampsite(campsiteId);
+
         // If any date is empty, get defaults
         if (startDate == null) {
             startDate = LocalDate.now();
@@ -47,39 +123,136 @@ public class BookingService {
             throw new InvalidInputException(ErrorMessages.INVALID_DATE_START_BEFORE_END);
         }
 
-        // Get all dates between the two dates
-        // Adding an extra day at the end as datesUntil is exclusive
-        List<LocalDate> availableDates = startDate
-                .datesUntil(endDate.plusDays(1))
-                .collect(Collectors.toList());
+        // Answer from the in-memory index when the range is inside the booking horizon
+        if (availabilityIndex.covers(startDate, endDate)
+                && availabilityIndex.load(campsiteId, () -> getIndexedDates(campsiteId))) {
+            return availabilityIndex.getAvailableDates(campsiteId, startDate, endDate);
+        }
 
-        Set<LocalDate> bookedDates = getBookedDates(startDate, endDate);
-        if (bookedDates != null && !bookedDates.isEmpty()) {
-            // Remove from available the scheduled dates
-            availableDates.removeAll(bookedDates);
+        return getAvailableDates(startDate, endDate, getBookedDates(campsiteId, startDate, endDate));
+    }
+
+    /**
+     * Version of the availability of a campsite for a date range, used as an ETag.
+     * It changes whenever a date in the range is booked or freed, and is null when the range is outside of
+     * the in-memory index or the index couldn't be loaded, as only the index keeps versions.
+     */
+    public String getAvailabilityVersion(Long campsiteId, LocalDate startDate, LocalDate endDate) {
+        validateCampsite(campsiteId);
+
+        // If any date is empty, get defaults
+        if (startDate == null) {
+            startDate = LocalDate.now();
+        }
+        if (endDate == null) {
+            endDate = startDate.plusDays(29);
         }
 
-        return availableDates;
+        if (startDate.isAfter(endDate) || !availabilityIndex.covers(startDate, endDate)
+                || !availabilityIndex.load(campsiteId, () -> getIndexedDates(campsiteId))) {
+            return null;
+        }
+
+        return availabilityIndex.getVersion(campsiteId, startDate, endDate);
     }
 
-    public BookingDTO getBooking(String bookingId) {
-        Booking booking = getBookingById(bookingId);
-        LocalDate maxDate = booking.getDate().stream()
-                .max(Comparator.comparing(LocalDate::toEpochDay))
-                .get();
+    public AvailabilityBitmapDTO getAvailabilityBitmap(Long campsiteId, LocalDate startDate, LocalDate endDate) {
+        // If any date is empty, get defaults
+        if (startDate == null) {
+            startDate = LocalDate.now();
+        }
+        if (endDate == null) {
+            endDate = startDate.plusDays(29);
+        }
+
+        List<LocalDate> availableDates = getAvailableDates(campsiteId, startDate, endDate);
+
+        int days = (int) ChronoUnit.DAYS.between(startDate, endDate.plusDays(1));
+        byte[] mask = new byte[(days + 7) / 8];
+        for (LocalDate date : availableDates) {
+            int day = (int) (date.toEpochDay() - startDate.toEpochDay());
+            mask[day >>> 3] |= 1 << (day & 7);
+        }
+
+        return AvailabilityBitmapDTO.builder()
+                .startDate(startDate)
+                .days(days)
+                .mask(mask)
+                .build();
+    }
 
-        LocalDate minDate = booking.getDate().stream()
-                .min(Comparator.comparing(LocalDate::toEpochDay))
-                .get();
+    public List<AvailabilityDTO> getAvailableDates(List<AvailabilityQueryDTO> queries) {
+        // Validate every query before reading anything, an invalid one fails the whole batch
+        List<AvailabilityDTO> results = new ArrayList<>();
+        for (AvailabilityQueryDTO query : queries) {
+            validateCampsite(query.getCampsiteId());
+            LocalDate startDate = query.getStartDate() != null ? query.getStartDate() : LocalDate.now();
+            LocalDate endDate = query.getEndDate() != null ? query.getEndDate() : startDate.plusDays(29);
+            if (startDate.isAfter(endDate)) {
+                throw new InvalidInputException(ErrorMessages.INVALID_DATE_START_BEFORE_END);
+            }
+
+            results.add(AvailabilityDTO.builder()
+                    .campsiteId(query.getCampsiteId())
+                    .startDate(startDate)
+                    .endDate(endDate)
+                    .build());
+        }
+
+        Map<Long, List<AvailabilityDTO>> resultsByCampsite = results.stream()
+                .collect(Collectors.groupingBy(AvailabilityDTO::getCampsiteId, LinkedHashMap::new, Collectors.toList()));
+
+        for (Map.Entry<Long, List<AvailabilityDTO>> entry : resultsByCampsite.entrySet()) {
+            Long campsiteId = entry.getKey();
+
+            // Answer from the in-memory index when possible
+            List<AvailabilityDTO> cacheResults = new ArrayList<>();
+            for (AvailabilityDTO result : entry.getValue()) {
+                if (availabilityIndex.covers(result.getStartDate(), result.getEndDate())
+                        && availabilityIndex.load(campsiteId, () -> getIndexedDates(campsiteId))) {
+                    result.setAvailableDates(availabilityIndex.getAvailableDates(
+                            campsiteId, result.getStartDate(), result.getEndDate()));
+                } else {
+                    cacheResults.add(result);
+                }
+            }
+
+            // Otherwise a single cache read covering all the remaining ranges of the campsite
+            if (!cacheResults.isEmpty()) {
+                LocalDate startDate = cacheResults.stream()
+                        .map(AvailabilityDTO::getStartDate)
+                        .min(Comparator.naturalOrder())
+                        .get();
+                LocalDate endDate = cacheResults.stream()
+                        .map(AvailabilityDTO::getEndDate)
+                        .max(Comparator.naturalOrder())
+                        .get();
+                Set<LocalDate> bookedDates = getBookedDates(campsiteId, startDate, endDate);
+
+                cacheResults.forEach(r -> r.setAvailableDates(
+                        getAvailableDates(r.getStartDate(), r.getEndDate(), bookedDates)));
+            }
+        }
+
+        return results;
+    }
+
+    public BookingDTO getBooking(String bookingId) {
+        BookingDTO booking = bookingNearCache.get(bookingId, () -> findBooking(bookingId));
+        if (booking == null) {
+            throw new InvalidInputException(ErrorMessages.BOOKING_ID_NOT_FOUND);
+        }
 
-        return toBookingDTO(booking, minDate, maxDate);
+        return booking;
     }
 
+    @Transactional
     public BookingDTO createNewBooking(BookingDTO newBooking) {
         // Valide Date Range
         LocalDate startDate = newBooking.getStartDate();
         LocalDate endDate = newBooking.getEndDate();
         validateDates(startDate, endDate);
+        validateCampsite(newBooking.getCampsiteId());
 
         // Create Unique ID
         String bookingId = UUID.randomUUID().toString();
@@ -88,17 +261,15 @@ public class BookingService {
         // Get all dates between the two dates
         Set<LocalDate> desiredDates = getDatesBetween(startDate, endDate);
 
+        // Fail fast if the dates are taken or being booked by another request
+        claimDates(newBooking.getCampsiteId(), desiredDates, newBooking.getHoldId());
+
         // Create DB object
-        Booking booking = Booking.builder()
-                .bookingId(bookingId)
-                .name(newBooking.getName())
-                .email(newBooking.getEmail())
-                .date(desiredDates)
-                .build();
+        Booking booking = toBooking(newBooking, desiredDates);
 
         try {
-            booking = bookingRepository.save(booking);
-            cachingService.addToCache(desiredDates);
+            booking = bookingRepository.saveAndFlush(booking);
+            publishChanges(booking.getCampsiteId(), desiredDates, new HashSet<>());
         } catch (DataIntegrityViolationException ex) {
             throw new AlreadyBookedException(ErrorMessages.ALREADY_BOOKED);
         } catch (Exception ex) {
@@ -109,6 +280,114 @@ public class BookingService {
         return toBookingDTO(booking, startDate, endDate);
     }
 
+    /**
+     * Creates many bookings at once, as when importing them from another system.
+     * Conflicts are found in memory, against the available dates and the rest of the batch, and the valid bookings
+     * are written in a single transaction using JDBC batching. Results are in the same order as the bookings.
+     */
+    public List<BookingResultDTO> createNewBookings(List<BookingDTO> newBookings) {
+        List<BookingResultDTO> results = new ArrayList<>();
+        Map<Integer, Booking> acceptedBookings = new LinkedHashMap<>();
+        Map<Long, Set<LocalDate>> claimedDates = new HashMap<>();
+
+        for (int i = 0; i < newBookings.size(); i++) {
+            BookingDTO newBooking = newBookings.get(i);
+            BookingResultDTO result = BookingResultDTO.builder().index(i).build();
+            results.add(result);
+
+            LocalDate startDate = newBooking.getStartDate();
+            LocalDate endDate = newBooking.getEndDate();
+            try {
+                validateDates(startDate, endDate);
+                validateCampsite(newBooking.getCampsiteId());
+            } catch (InvalidInputException ex) {
+                result.setError(ex.getMessage());
+                continue;
+            }
+
+            // Dates must be free and not taken by an earlier booking of the batch
+            Long campsiteId = newBooking.getCampsiteId();
+            Set<LocalDate> desiredDates = getDatesBetween(startDate, endDate);
+            Set<LocalDate> campsiteClaimedDates = claimedDates.computeIfAbsent(campsiteId, id -> new HashSet<>());
+            if (!Collections.disjoint(campsiteClaimedDates, desiredDates)
+                    || getAvailableDates(campsiteId, startDate, endDate).size() != desiredDates.size()) {
+                result.setError(ErrorMessages.ALREADY_BOOKED);
+                continue;
+            }
+
+            campsiteClaimedDates.addAll(desiredDates);
+            newBooking.setBookingId(UUID.randomUUID().toString());
+            acceptedBookings.put(i, toBooking(newBooking, desiredDates));
+        }
+
+        if (acceptedBookings.isEmpty()) {
+            return results;
+        }
+
+        try {
+            transactionTemplate.execute(status -> {
+                claimedDates.forEach((campsiteId, dates) -> claimDates(campsiteId, dates, null));
+                bookingRepository.saveAll(acceptedBookings.values());
+                bookingRepository.flush();
+
+                // One cache change per campsite for the whole batch
+                claimedDates.forEach((campsiteId, dates) -> {
+                    if (!dates.isEmpty()) {
+                        publishChanges(campsiteId, dates, new HashSet<>());
+                    }
+                });
+                return null;
+            });
+
+            acceptedBookings.forEach((i, booking) ->
+                    results.get(i).setBooking(toBookingDTO(booking, booking.getStartDate(), booking.getEndDate())));
+        } catch (DataIntegrityViolationException | AlreadyBookedException ex) {
+            // Dates were taken after they were checked, book one at a time to know which ones conflict
+            log.warn("Conflict when saving booking batch, retrying bookings one at a time.");
+            acceptedBookings.keySet().forEach(i -> createNewBooking(newBookings.get(i), results.get(i)));
+        } catch (Exception ex) {
+            log.error("Error during booking batch save.", ex);
+            throw new BookingException(ErrorMessages.USER_FRIENDLY_GENERAL_ERROR);
+        }
+
+        return results;
+    }
+
+    /**
+     * Holds the dates during checkout, so they can't be booked by anyone else until the hold expires.
+     * The hold is confirmed by creating the booking with its holdId.
+     */
+    public HoldDTO holdDates(HoldDTO holdDTO) {
+        LocalDate startDate = holdDTO.getStartDate();
+        LocalDate endDate = holdDTO.getEndDate();
+        validateDates(startDate, endDate);
+        validateCampsite(holdDTO.getCampsiteId());
+
+        Long campsiteId = holdDTO.getCampsiteId();
+        Set<LocalDate> desiredDates = getDatesBetween(startDate, endDate);
+        if (getAvailableDates(campsiteId, startDate, endDate).size() != desiredDates.size()) {
+            throw new AlreadyBookedException(ErrorMessages.ALREADY_BOOKED);
+        }
+
+        Hold hold = bookingHolds.hold(campsiteId, desiredDates);
+        if (hold == null) {
+            throw new AlreadyBookedException(ErrorMessages.ALREADY_BOOKED);
+        }
+
+        return HoldDTO.builder()
+                .holdId(hold.getHoldId())
+                .campsiteId(campsiteId)
+                .startDate(startDate)
+                .endDate(endDate)
+                .expiresAt(hold.getExpiresAt())
+                .build();
+    }
+
+    public void releaseHold(String holdId) {
+        bookingHolds.release(holdId);
+    }
+
+    @Transactional
     public BookingDTO modifyBooking(ModifyBookingDTO modifyBookingDTO) {
         // Valide Date Range
         LocalDate newStartDate = modifyBookingDTO.getStartDate();
@@ -116,26 +395,31 @@ public class BookingService {
         validateDates(newStartDate, newEndDate);
 
         // Get booking
-        Booking oldBooking = getBookingById(modifyBookingDTO.getBookingId());
+        Booking booking = getBookingById(modifyBookingDTO.getBookingId());
 
         // Validate
-        if (isDatesInPast(oldBooking.getDate())) {
+        if (hasStarted(booking)) {
             throw new BookingFinishedException("Can't modify a booking that has already passed.");
         }
 
-        // Create new booking
+        Set<LocalDate> oldDates = getDatesBetween(booking.getStartDate(), booking.getEndDate());
         Set<LocalDate> newDesiredDates = getDatesBetween(newStartDate, newEndDate);
-        Booking newBooking = Booking.builder()
-                .id(oldBooking.getId())
-                .bookingId(oldBooking.getBookingId())
-                .name(oldBooking.getName())
-                .email(oldBooking.getEmail())
-                .date(newDesiredDates)
-                .build();
+
+        // Only the nights that are not already part of the booking can conflict
+        Set<LocalDate> addedDates = new HashSet<>(newDesiredDates);
+        addedDates.removeAll(oldDates);
+        claimDates(booking.getCampsiteId(), addedDates, null);
+
+        // Update the managed booking in place, so only the nights that changed are deleted and inserted
+        booking.getDate().removeIf(d -> !newDesiredDates.contains(d.getDate()));
+        booking.getDate().addAll(Booking.toBookingDates(booking.getCampsiteId(), newDesiredDates));
+        booking.setStartDate(newStartDate);
+        booking.setEndDate(newEndDate);
 
         try {
-            bookingRepository.save(newBooking);
-            cachingService.updateCache(newDesiredDates, oldBooking.getDate());
+            bookingRepository.saveAndFlush(booking);
+            publishChanges(booking.getCampsiteId(), newDesiredDates, oldDates);
+            invalidateBooking(booking.getBookingId());
         } catch (DataIntegrityViolationException ex) {
             throw new AlreadyBookedException(ErrorMessages.ALREADY_BOOKED);
         } catch (ObjectOptimisticLockingFailureException ex) {
@@ -150,21 +434,25 @@ public class BookingService {
             throw new BookingException(ErrorMessages.USER_FRIENDLY_GENERAL_ERROR);
         }
 
-        return toBookingDTO(newBooking, newStartDate, newEndDate);
+        return toBookingDTO(booking, newStartDate, newEndDate);
     }
 
+    @Transactional
     public void deleteBooking(String bookingId) {
         // Get booking
         Booking booking = getBookingById(bookingId);
 
         // Validate
-        if (isDatesInPast(booking.getDate())) {
+        if (hasStarted(booking)) {
             throw new BookingFinishedException("Can't delete a booking that has already passed.");
         }
 
         try {
+            Set<LocalDate> bookedDates = getDatesBetween(booking.getStartDate(), booking.getEndDate());
             bookingRepository.delete(booking);
-            cachingService.removeFromCache(booking.getDate());
+            bookingRepository.flush();
+            publishChanges(booking.getCampsiteId(), new HashSet<>(), bookedDates);
+            invalidateBooking(booking.getBookingId());
         } catch (Exception ex) {
             log.error("Error during booking delete.", ex);
             throw new BookingCancelationException(ErrorMessages.USER_FRIENDLY_GENERAL_ERROR);
@@ -173,23 +461,178 @@ public class BookingService {
 
     public void resetCache() {
         try {
-            // Delete all cache
-            cachingService.clearCache();
+            // Versions are read before the dates, so campsites changed while they are read are not synced with them
+            Map<Long, Long> versions = new HashMap<>();
+            for (Long campsiteId : cachingService.getCampsiteIds()) {
+                versions.put(campsiteId, cachingService.getVersion(campsiteId));
+            }
 
             // Get all bookings for the future (which won't be more than 1 month)
-            Set<LocalDate> bookedDates = bookingRepository.findScheduledDates(LocalDate.now(), LocalDate.MAX);
-
-            // Update caching
-            cachingService.addToCache(bookedDates);
+            LocalDate today = LocalDate.now();
+            Map<Long, Set<LocalDate>> bookedDates = bookingRepository.findAllScheduledDates(today, getHorizonEnd(today))
+                    .stream()
+                    .collect(Collectors.groupingBy(BookingDate::getCampsiteId,
+                            Collectors.mapping(BookingDate::getDate, Collectors.toSet())));
+
+            // Campsites without future bookings may still have stale dates in cache or index
+            Set<Long> campsiteIds = new HashSet<>(bookedDates.keySet());
+            campsiteIds.addAll(versions.keySet());
+            campsiteIds.addAll(availabilityIndex.getCampsiteIds());
+
+            for (Long campsiteId : campsiteIds) {
+                // Apply only the differences, the cache stays readable during the whole reset
+                // Campsites that were not cached are expected to have no changes yet
+                // Campsites changed since their version was read are synced again with their own dates
+                if (!cachingService.syncCache(campsiteId, bookedDates.getOrDefault(campsiteId, new HashSet<>()), today,
+                        versions.getOrDefault(campsiteId, 0L))) {
+                    syncCache(campsiteId, today);
+                }
+
+                // Rebuild the in-memory index, a campsite that keeps changing is loaded again on its next read
+                availabilityIndex.reload(campsiteId, () -> getIndexedDates(campsiteId));
+            }
         } catch (Exception ex) {
             log.error("Error during cache reset.", ex);
         }
 
     }
 
+    // Cache changes are saved in the booking transaction and relayed once it commits
+    // The local index is only updated after commit, so it never shows uncommitted bookings
+    // Other instances get the changes through the availability sync
+    private void publishChanges(Long campsiteId, Set<LocalDate> addedDates, Set<LocalDate> removedDates) {
+        outboxRelay.saveEvent(campsiteId, addedDates, removedDates);
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                availabilityIndex.markAvailable(campsiteId, removedDates);
+                availabilityIndex.markBooked(campsiteId, addedDates);
+                outboxRelay.triggerRelay();
+                availabilityFeed.publish(campsiteId, addedDates, removedDates);
+                availabilitySync.publish(campsiteId, addedDates, removedDates);
+            }
+        });
+    }
+
+    // Readers keep getting the committed booking until then, so it is only removed from the near cache after commit
+    private void invalidateBooking(String bookingId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                bookingNearCache.invalidate(bookingId);
+            }
+        });
+    }
+
+    /**
+     * Rejects the dates before any DB write when the index has them booked, when another checkout holds them, or
+     * when another request on this instance is booking them. Dates of the given hold are already claimed by it.
+     * Claims are released when the transaction completes, once the index is updated, and the hold once booked.
+     */
+    private void claimDates(Long campsiteId, Set<LocalDate> dates, String holdId) {
+        if (dates.isEmpty()) {
+            return;
+        }
+
+        if (bookingHolds.isHeldByOther(campsiteId, dates, holdId)) {
+            throw new AlreadyBookedException(ErrorMessages.ALREADY_BOOKED);
+        }
+
+        Set<LocalDate> unheldDates = new HashSet<>(dates);
+        if (holdId != null) {
+            unheldDates.removeAll(bookingHolds.getHeldDates(holdId, campsiteId));
+        }
+
+        Object owner = new Object();
+        if (claimsEnabled && !unheldDates.isEmpty()) {
+            if (isBookedInIndex(campsiteId, unheldDates) || !dateClaims.claim(campsiteId, unheldDates, owner)) {
+                throw new AlreadyBookedException(ErrorMessages.ALREADY_BOOKED);
+            }
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                dateClaims.release(campsiteId, unheldDates, owner);
+                if (holdId != null && status == STATUS_COMMITTED) {
+                    bookingHolds.release(holdId);
+                }
+            }
+        });
+    }
+
+    private boolean isBookedInIndex(Long campsiteId, Set<LocalDate> dates) {
+        LocalDate startDate = Collections.min(dates);
+        LocalDate endDate = Collections.max(dates);
+        // The DB constraint still rejects the dates when the index can't tell
+        if (!availabilityIndex.covers(startDate, endDate)
+                || !availabilityIndex.load(campsiteId, () -> getIndexedDates(campsiteId))) {
+            return false;
+        }
+
+        return !new HashSet<>(availabilityIndex.getAvailableDates(campsiteId, startDate, endDate)).containsAll(dates);
+    }
+
+    private void createNewBooking(BookingDTO newBooking, BookingResultDTO result) {
+        try {
+            result.setBooking(transactionTemplate.execute(status -> createNewBooking(newBooking)));
+        } catch (AlreadyBookedException | BookingException ex) {
+            result.setError(ex.getMessage());
+        }
+    }
+
+    private Booking toBooking(BookingDTO bookingDTO, Set<LocalDate> dates) {
+        return Booking.builder()
+                .bookingId(bookingDTO.getBookingId())
+                .campsiteId(bookingDTO.getCampsiteId())
+                .name(bookingDTO.getName())
+                .email(bookingDTO.getEmail())
+                .startDate(bookingDTO.getStartDate())
+                .endDate(bookingDTO.getEndDate())
+                .date(Booking.toBookingDates(bookingDTO.getCampsiteId(), dates))
+                .build();
+    }
+
+    // Bounded, as LocalDate.MAX is out of the range of a DB date
+    private LocalDate getHorizonEnd(LocalDate today) {
+        return today.plusDays(HORIZON_DAYS);
+    }
+
+    private Set<LocalDate> getIndexedDates(Long campsiteId) {
+        LocalDate today = LocalDate.now();
+        return bookingRepository.findScheduledDates(campsiteId, today, today.plusDays(availabilityIndex.getCapacity()));
+    }
+
+    private BookingDTO findBooking(String bookingId) {
+        Booking booking = bookingRepository.findByBookingId(bookingId);
+        if (booking != null) {
+            return toBookingDTO(booking, booking.getStartDate(), booking.getEndDate());
+        }
+
+        // Finished bookings may have been moved to the archive
+        ArchivedBooking archivedBooking = archivedBookingRepository.findByBookingId(bookingId);
+        if (archivedBooking == null) {
+            return null;
+        }
+
+        return BookingDTO.builder()
+                .bookingId(archivedBooking.getBookingId())
+                .campsiteId(archivedBooking.getCampsiteId())
+                .name(archivedBooking.getName())
+                .email(archivedBooking.getEmail())
+                .startDate(archivedBooking.getStartDate())
+                .endDate(archivedBooking.getEndDate())
+                .build();
+    }
+
     private Booking getBookingById(String bookingId) throws InvalidInputException {
         Booking booking = bookingRepository.findByBookingId(bookingId);
         if (booking == null) {
+            // Finished bookings are moved to the archive, they exist but can't be changed anymore
+            if (archivedBookingRepository.findByBookingId(bookingId) != null) {
+                throw new BookingFinishedException("Can't change a booking that has already passed.");
+            }
             throw new InvalidInputException(ErrorMessages.BOOKING_ID_NOT_FOUND);
         }
         return booking;
@@ -199,25 +642,35 @@ public class BookingService {
     // StartDate and EndDate can't be equals
     // Maximum of 3 days reservation
     // Reservation must be for more than 1 day and less than 30 days in the future
-    private void validateDates(LocalDate startDate, LocalDate endDate) throws InvalidInputException {
+    // Package-private for benchmarks
+    void validateDates(LocalDate startDate, LocalDate endDate) throws InvalidInputException {
         Long daysTillReservation = ChronoUnit.DAYS.between(LocalDate.now(), startDate);
         if (endDate.isBefore(startDate)
                 || startDate.equals(endDate)
-                || ChronoUnit.DAYS.between(startDate, endDate.plusDays(1)) > 3 // Adding one day as between is exclusive
+                || ChronoUnit.DAYS.between(startDate, endDate.plusDays(1)) > MAX_NIGHTS // Adding one day as between is exclusive
                 || daysTillReservation < 1
-                || daysTillReservation > 30) {
+                || daysTillReservation > MAX_DAYS_AHEAD) {
 
             throw new InvalidInputException(ErrorMessages.INVALID_BOOKING_DATES);
         }
     }
 
-    private boolean isDatesInPast(Set<LocalDate> dates) {
-        return dates.stream().anyMatch(d -> d.equals(LocalDate.now()) || d.isBefore(LocalDate.now()));
+    // Unknown campsites are rejected before anything is cached or indexed for them
+    private void validateCampsite(Long campsiteId) throws InvalidInputException {
+        if (campsiteId == null || campsiteId < 1 || campsiteId > campsiteCount) {
+            throw new InvalidInputException(ErrorMessages.CAMPSITE_ID_NOT_FOUND);
+        }
+    }
+
+    // Bookings starting today or before can't be changed
+    private boolean hasStarted(Booking booking) {
+        return !booking.getStartDate().isAfter(LocalDate.now());
     }
 
     private BookingDTO toBookingDTO(Booking booking, LocalDate startDate, LocalDate endDate) {
         return BookingDTO.builder()
                 .bookingId(booking.getBookingId())
+                .campsiteId(booking.getCampsiteId())
                 .name(booking.getName())
                 .email(booking.getEmail())
                 .startDate(startDate)
@@ -225,22 +678,81 @@ public class BookingService {
                 .build();
     }
 
-    private Set<LocalDate> getBookedDates(LocalDate startDate, LocalDate endDate) {
-        // Get from cache
-        Set<LocalDate> cacheResult = cachingService.getAllFromCache();
+    private List<LocalDate> getAvailableDates(LocalDate startDate, LocalDate endDate, Set<LocalDate> bookedDates) {
+        // Get all dates between the two dates
+        // Adding an extra day at the end as datesUntil is exclusive
+        List<LocalDate> availableDates = startDate
+                .datesUntil(endDate.plusDays(1))
+                .collect(Collectors.toList());
+
+        if (bookedDates != null && !bookedDates.isEmpty()) {
+            // Remove from available the scheduled dates
+            availableDates.removeAll(bookedDates);
+        }
+
+        return availableDates;
+    }
+
+    private Set<LocalDate> getBookedDates(Long campsiteId, LocalDate startDate, LocalDate endDate) {
+        // Past dates are never cached
+        if (startDate.isBefore(LocalDate.now())) {
+            return bookingRepository.findScheduledDates(campsiteId, startDate, endDate);
+        }
+
+        // Cache failed to load a moment ago, don't wait on it again
+        CacheLoad load = cacheLoads.computeIfAbsent(campsiteId, id -> new CacheLoad());
+        if (System.currentTimeMillis() < load.retryAt) {
+            return bookingRepository.findScheduledDates(campsiteId, startDate, endDate);
+        }
 
-        // If cache is empty, try to get from DB and update cache
-        // Otherwise, just return the cache
-        if (cacheResult == null || cacheResult.isEmpty()) {
-            cacheResult = bookingRepository.findScheduledDates(startDate, endDate);
-            cachingService.addToCache(cacheResult);
-            return cacheResult;
-        } else {
-            return cacheResult;
+        // If cache is not loaded, load it once for all concurrent requests
+        // An empty result from a loaded cache means there are no bookings, no need to go to DB
+        if (cachingService.isLoaded(campsiteId, startDate) || loadCache(campsiteId, load)) {
+            return cachingService.getBookedDates(campsiteId, startDate, endDate);
         }
+
+        // Cache is unavailable or doesn't cover the range, get from DB
+        return bookingRepository.findScheduledDates(campsiteId, startDate, endDate);
     }
 
-    private Set<LocalDate> getDatesBetween(LocalDate newStartDate, LocalDate newEndDate) {
+    // Whether the cache holds the campsite after loading it, from today so from any start date that is cached
+    private boolean loadCache(Long campsiteId, CacheLoad load) {
+        long attempt = load.attempts;
+        synchronized (load) {
+            // Another request already loaded (or tried to load) the cache while waiting for the lock
+            if (attempt != load.attempts) {
+                return load.loaded;
+            }
+
+            load.loaded = false;
+            try {
+                load.loaded = syncCache(campsiteId, LocalDate.now());
+            } finally {
+                if (!load.loaded) {
+                    load.retryAt = System.currentTimeMillis() + cacheLoadBackoffMs;
+                }
+                load.attempts++;
+            }
+            return load.loaded;
+        }
+    }
+
+    // Dates booked while they are read are missing from them, so the sync is only done when nothing changed since
+    // Retried a few times with the dates read again, as a campsite being booked right now may change meanwhile
+    private boolean syncCache(Long campsiteId, LocalDate today) {
+        for (int i = 0; i < SYNC_ATTEMPTS; i++) {
+            long version = cachingService.getVersion(campsiteId);
+            Set<LocalDate> bookedDates = bookingRepository.findScheduledDates(campsiteId, today, getHorizonEnd(today));
+            if (cachingService.syncCache(campsiteId, bookedDates, today, version)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Package-private for benchmarks
+    Set<LocalDate> getDatesBetween(LocalDate newStartDate, LocalDate newEndDate) {
         // Get all dates between the two dates
         // Adding an extra day at the end as datesUntil is exclusive
         Set<LocalDate> newDesiredDates = newStartDate
@@ -249,4 +761,15 @@ public class BookingService {
         return newDesiredDates;
     }
 
+    // Last cache load of a campsite, shared by the requests waiting for it
+    private static class CacheLoad {
+
+        private volatile long attempts;
+
+        private volatile boolean loaded;
+
+        private volatile long retryAt;
+
+    }
+
 }
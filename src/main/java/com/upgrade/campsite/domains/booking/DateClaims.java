@@ -0,0 +1,39 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dates being booked right now on this instance, claimed before writing to the DB so that concurrent requests
+ * for the same dates fail fast instead of racing to the unique constraint.
+ * Claims never block, and they are only local: the unique constraint still guards against other instances.
+ */
+@Component
+public class DateClaims {
+
+    private final ConcurrentMap<BookingDate, Object> claims = new ConcurrentHashMap<>();
+
+    // All or nothing, nothing is claimed if any of the dates is already claimed
+    public boolean claim(Long campsiteId, Collection<LocalDate> dates, Object owner) {
+        List<BookingDate> claimed = new ArrayList<>();
+        for (LocalDate date : dates) {
+            BookingDate claim = new BookingDate(campsiteId, date);
+            if (claims.putIfAbsent(claim, owner) != null) {
+                claimed.forEach(c -> claims.remove(c, owner));
+                return false;
+            }
+            claimed.add(claim);
+        }
+        return true;
+    }
+
+    public void release(Long campsiteId, Collection<LocalDate> dates, Object owner) {
+        dates.forEach(d -> claims.remove(new BookingDate(campsiteId, d), owner));
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Set;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Dates held for a checkout on this instance, until they are booked, released or expire.
+ */
+@Data
+@AllArgsConstructor
+class Hold {
+
+    private String holdId;
+
+    private Long campsiteId;
+
+    private Set<LocalDate> dates;
+
+    private LocalDateTime expiresAt;
+
+}
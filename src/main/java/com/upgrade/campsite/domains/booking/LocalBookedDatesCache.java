@@ -0,0 +1,118 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Booked dates kept in this JVM, one sorted set per campsite.
+ * Sets are never changed once published, every change replaces the whole set of the campsite, so readers never see
+ * a change half applied. Campsites have few future bookings, so copying them is cheap.
+ */
+@Component
+@ConditionalOnProperty(name = "cache.type", havingValue = BookedDatesCache.TYPE_LOCAL)
+public class LocalBookedDatesCache implements BookedDatesCache {
+
+    private final ConcurrentMap<Long, CachedDates> campsites = new ConcurrentHashMap<>();
+
+    // Changes applied to each campsite, loaded or not, only changed while holding the campsite in campsites
+    private final ConcurrentMap<Long, Long> versions = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean isLoaded(Long campsiteId, LocalDate startDate) {
+        CachedDates cached = campsites.get(campsiteId);
+        return cached != null && !cached.loadedFrom.isAfter(startDate);
+    }
+
+    @Override
+    public Set<Long> getCampsiteIds() {
+        return new HashSet<>(campsites.keySet());
+    }
+
+    @Override
+    public long getVersion(Long campsiteId) {
+        return versions.getOrDefault(campsiteId, 0L);
+    }
+
+    // Compared and replaced while holding the campsite, so no change is applied in between
+    @Override
+    public boolean syncCache(Long campsiteId, Set<LocalDate> bookingDates, LocalDate loadedFrom, long version) {
+        NavigableSet<LocalDate> dates = new TreeSet<>(bookingDates);
+        boolean[] synced = new boolean[1];
+        campsites.compute(campsiteId, (id, cached) -> {
+            if (getVersion(campsiteId) != version) {
+                return cached;
+            }
+            synced[0] = true;
+            return new CachedDates(dates.tailSet(loadedFrom, true), loadedFrom);
+        });
+        return synced[0];
+    }
+
+    @Override
+    public Set<LocalDate> getBookedDates(Long campsiteId, LocalDate startDate, LocalDate endDate) {
+        CachedDates cached = campsites.get(campsiteId);
+        if (cached == null || startDate.isAfter(endDate)) {
+            return new HashSet<>();
+        }
+
+        return new HashSet<>(cached.dates.subSet(startDate, true, endDate, true));
+    }
+
+    // Campsites that are not loaded are left as they are, they get the change when loaded from the DB
+    @Override
+    public void applyChanges(Long campsiteId, Set<LocalDate> addedDates, Set<LocalDate> removedDates) {
+        campsites.compute(campsiteId, (id, cached) -> {
+            versions.merge(campsiteId, 1L, Long::sum);
+            if (cached == null) {
+                return null;
+            }
+
+            NavigableSet<LocalDate> dates = new TreeSet<>(cached.dates);
+            dates.removeAll(removedDates);
+            dates.addAll(addedDates);
+            return new CachedDates(dates.tailSet(cached.loadedFrom, true), cached.loadedFrom, cached.loadedAt);
+        });
+    }
+
+    @Override
+    public void clearCache() {
+        campsites.clear();
+    }
+
+    // Campsite is loaded again on the next read
+    public void invalidate(Long campsiteId) {
+        campsites.remove(campsiteId);
+    }
+
+    // Time the campsite was loaded, 0 when not loaded
+    public long getLoadedAt(Long campsiteId) {
+        CachedDates cached = campsites.get(campsiteId);
+        return cached != null ? cached.loadedAt : 0;
+    }
+
+    private static class CachedDates {
+
+        private final NavigableSet<LocalDate> dates;
+        private final LocalDate loadedFrom;
+        private final long loadedAt;
+
+        private CachedDates(NavigableSet<LocalDate> dates, LocalDate loadedFrom) {
+            this(dates, loadedFrom, System.currentTimeMillis());
+        }
+
+        private CachedDates(NavigableSet<LocalDate> dates, LocalDate loadedFrom, long loadedAt) {
+            this.dates = Collections.unmodifiableNavigableSet(dates);
+            this.loadedFrom = loadedFrom;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.upgrade.campsite.domains.booking;
+
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+/**
+ * Read-only view of the booking_date rows, so scheduled dates are queried without joining booking.
+ * Rows are written through Booking.date.
+ */
+@Entity
+@Immutable
+@Table(name = "booking_date")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScheduledDate {
+
+    @EmbeddedId
+    private BookingDate id;
+
+}
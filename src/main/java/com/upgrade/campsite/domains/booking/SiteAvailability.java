@@ -0,0 +1,215 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Booked dates of a single campsite, stored as a rolling bitset keyed by epoch-day.
+ * Bit 0 is always today, the window rolls forward as days go by.
+ * Every change increases the version of the range bucket it touched, so clients can tell when a range changed.
+ */
+class SiteAvailability {
+
+    private static final int BITS_PER_WORD = 64;
+
+    // Days per version bucket
+    private static final int BUCKET_DAYS = 32;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final long[] words;
+    private volatile long firstEpochDay;
+    private volatile long loadedAt;
+    private long modCount;
+    private volatile boolean loaded;
+
+    // Bumped when a reload changes the bitset, as it can affect any bucket
+    private long generation;
+    private final Map<Long, Long> bucketVersions = new HashMap<>();
+
+    SiteAvailability(int capacity) {
+        words = new long[capacity / BITS_PER_WORD];
+        firstEpochDay = LocalDate.now().toEpochDay();
+    }
+
+    int getCapacity() {
+        return words.length * BITS_PER_WORD;
+    }
+
+    // Site must be (re)loaded when it was never loaded or when it is older than the given max age
+    boolean isLoaded(long maxAgeSeconds) {
+        return loaded
+                && (maxAgeSeconds <= 0 || System.currentTimeMillis() - loadedAt < maxAgeSeconds * 1000);
+    }
+
+    // Site is loaded again on the next read
+    void expire() {
+        loaded = false;
+    }
+
+    long getModCount() {
+        lock.readLock().lock();
+        try {
+            return modCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    List<LocalDate> getAvailableDates(LocalDate startDate, LocalDate endDate) {
+        roll();
+
+        List<LocalDate> availableDates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            long first = Math.max(startDate.toEpochDay() - firstEpochDay, 0);
+            long last = Math.min(endDate.toEpochDay() - firstEpochDay, getCapacity() - 1);
+
+            for (long offset = first; offset <= last; ) {
+                int word = (int) (offset >>> 6);
+                // Free days are the zero bits of the word, masked to the requested range
+                long free = ~words[word] & (-1L << (offset & 63));
+                long wordEnd = ((long) word << 6) + 63;
+                if (wordEnd > last) {
+                    free &= -1L >>> (wordEnd - last);
+                }
+
+                while (free != 0) {
+                    int bit = Long.numberOfTrailingZeros(free);
+                    availableDates.add(LocalDate.ofEpochDay(firstEpochDay + ((long) word << 6) + bit));
+                    free &= free - 1;
+                }
+                offset = wordEnd + 1;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return availableDates;
+    }
+
+    // Only ever increases while the availability of the range changes
+    long getVersion(LocalDate startDate, LocalDate endDate) {
+        lock.readLock().lock();
+        try {
+            long version = generation;
+            for (long bucket = startDate.toEpochDay() / BUCKET_DAYS; bucket <= endDate.toEpochDay() / BUCKET_DAYS; bucket++) {
+                version += bucketVersions.getOrDefault(bucket, 0L);
+            }
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void update(Collection<LocalDate> dates, boolean booked) {
+        if (dates == null || dates.isEmpty()) {
+            return;
+        }
+
+        roll();
+        lock.writeLock().lock();
+        try {
+            dates.forEach(d -> {
+                set(d, booked);
+                bucketVersions.merge(d.toEpochDay() / BUCKET_DAYS, 1L, Long::sum);
+            });
+            modCount++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces all the bits with the given booked dates.
+     * Returns false, without applying anything, if the site was modified after expectedModCount was read,
+     * as the snapshot may be missing those changes and must be read again.
+     */
+    boolean reload(Collection<LocalDate> bookedDates, long expectedModCount) {
+        lock.writeLock().lock();
+        try {
+            if (modCount != expectedModCount) {
+                return false;
+            }
+
+            long[] previousWords = words.clone();
+            long previousFirstEpochDay = firstEpochDay;
+
+            firstEpochDay = LocalDate.now().toEpochDay();
+            Arrays.fill(words, 0L);
+            if (bookedDates != null) {
+                bookedDates.forEach(d -> set(d, true));
+            }
+
+            if (previousFirstEpochDay != firstEpochDay || !Arrays.equals(previousWords, words)) {
+                generation++;
+            }
+            loadedAt = System.currentTimeMillis();
+            loaded = true;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Dates outside of the window are ignored, past dates are never needed and future ones can't be booked yet
+    private void set(LocalDate date, boolean booked) {
+        long offset = date.toEpochDay() - firstEpochDay;
+        if (offset < 0 || offset >= getCapacity()) {
+            return;
+        }
+
+        int word = (int) (offset >>> 6);
+        if (booked) {
+            words[word] |= 1L << offset;
+        } else {
+            words[word] &= ~(1L << offset);
+        }
+    }
+
+    // Move the window forward so bit 0 is always today
+    private void roll() {
+        long today = LocalDate.now().toEpochDay();
+        if (today == firstEpochDay) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            long days = today - firstEpochDay;
+            if (days < 0 || days >= getCapacity()) {
+                // Clock went backwards or the site was idle for the whole window, force a reload
+                Arrays.fill(words, 0L);
+                loaded = false;
+            } else if (days > 0) {
+                shift(days);
+            }
+            firstEpochDay = today;
+
+            // Versions of past buckets are not needed anymore
+            bucketVersions.keySet().removeIf(bucket -> bucket < today / BUCKET_DAYS);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void shift(long days) {
+        int wordShift = (int) (days >>> 6);
+        int bitShift = (int) (days & 63);
+
+        for (int i = 0; i < words.length; i++) {
+            int src = i + wordShift;
+            long low = src < words.length ? words[src] >>> bitShift : 0L;
+            long high = bitShift != 0 && src + 1 < words.length ? words[src + 1] << (BITS_PER_WORD - bitShift) : 0L;
+            words[i] = low | high;
+        }
+    }
+
+}
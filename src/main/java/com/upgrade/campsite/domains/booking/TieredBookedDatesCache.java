@@ -0,0 +1,175 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Booked dates read from this JVM and kept in Redis, shared by every instance.
+ * A campsite is copied from Redis the first time it is read, and dropped when another instance changes it,
+ * through a Redis channel. Copies also expire after a while, in case a message was missed.
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnProperty(name = "cache.type", havingValue = BookedDatesCache.TYPE_TIERED)
+public class TieredBookedDatesCache implements BookedDatesCache {
+
+    // Changes to every campsite
+    private static final String ALL_CAMPSITES = "*";
+
+    @Autowired
+    private BookingCacheService sharedCache;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Value("${cache.tiered.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${cache.tiered.channel:BOOKING_DATES_INVALIDATIONS}")
+    private String channel;
+
+    private final LocalBookedDatesCache localCache = new LocalBookedDatesCache();
+
+    // Invalidations sent by this instance are already applied, so they are skipped when received
+    private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
+
+    // A copy read before an invalidation may be stale, so it is only kept if there was none since
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String value = new String(message.getBody(), StandardCharsets.UTF_8);
+            int separator = value.indexOf(':');
+            if (!instanceId.equals(value.substring(0, separator))) {
+                invalidateLocal(value.substring(separator + 1));
+            }
+        }, new ChannelTopic(channel));
+    }
+
+    @Override
+    public boolean isLoaded(Long campsiteId, LocalDate startDate) {
+        return isLoadedLocally(campsiteId, startDate)
+                || loadLocally(campsiteId, startDate)
+                || sharedCache.isLoaded(campsiteId, startDate);
+    }
+
+    @Override
+    public Set<Long> getCampsiteIds() {
+        Set<Long> campsiteIds = sharedCache.getCampsiteIds();
+        campsiteIds.addAll(localCache.getCampsiteIds());
+        return campsiteIds;
+    }
+
+    @Override
+    public long getVersion(Long campsiteId) {
+        return sharedCache.getVersion(campsiteId);
+    }
+
+    // Local copy is only replaced when no change was applied to it since Redis was synced, otherwise it is dropped
+    @Override
+    public boolean syncCache(Long campsiteId, Set<LocalDate> bookingDates, LocalDate loadedFrom, long version) {
+        long invalidationCount = invalidations.get();
+        if (!sharedCache.syncCache(campsiteId, bookingDates, loadedFrom, version)) {
+            return false;
+        }
+
+        synchronized (localCache) {
+            if (invalidationCount == invalidations.incrementAndGet() - 1) {
+                localCache.syncCache(campsiteId, bookingDates, loadedFrom, localCache.getVersion(campsiteId));
+            } else {
+                localCache.invalidate(campsiteId);
+            }
+        }
+        publishInvalidation(String.valueOf(campsiteId));
+        return true;
+    }
+
+    @Override
+    public Set<LocalDate> getBookedDates(Long campsiteId, LocalDate startDate, LocalDate endDate) {
+        if (isLoadedLocally(campsiteId, startDate)) {
+            return localCache.getBookedDates(campsiteId, startDate, endDate);
+        }
+
+        return sharedCache.getBookedDates(campsiteId, startDate, endDate);
+    }
+
+    @Override
+    public void applyChanges(Long campsiteId, Set<LocalDate> addedDates, Set<LocalDate> removedDates) {
+        sharedCache.applyChanges(campsiteId, addedDates, removedDates);
+        synchronized (localCache) {
+            invalidations.incrementAndGet();
+            localCache.applyChanges(campsiteId, addedDates, removedDates);
+        }
+        publishInvalidation(String.valueOf(campsiteId));
+    }
+
+    @Override
+    public void clearCache() {
+        sharedCache.clearCache();
+        invalidateLocal(ALL_CAMPSITES);
+        publishInvalidation(ALL_CAMPSITES);
+    }
+
+    private boolean isLoadedLocally(Long campsiteId, LocalDate startDate) {
+        return localCache.isLoaded(campsiteId, startDate)
+                && System.currentTimeMillis() - localCache.getLoadedAt(campsiteId) < ttlSeconds * 1000;
+    }
+
+    // Copies the campsite from Redis when Redis has every date the read needs
+    private boolean loadLocally(Long campsiteId, LocalDate startDate) {
+        LocalDate today = LocalDate.now();
+        if (startDate.isBefore(today) || !sharedCache.isLoaded(campsiteId, today)) {
+            return false;
+        }
+
+        long invalidationCount = invalidations.get();
+        Set<LocalDate> bookedDates = sharedCache.getBookedDates(campsiteId, today,
+                today.plusDays(BookingService.HORIZON_DAYS));
+        synchronized (localCache) {
+            if (invalidationCount != invalidations.get()) {
+                return false;
+            }
+            localCache.syncCache(campsiteId, bookedDates, today, localCache.getVersion(campsiteId));
+        }
+        return true;
+    }
+
+    private void invalidateLocal(String campsiteId) {
+        synchronized (localCache) {
+            invalidations.incrementAndGet();
+            if (ALL_CAMPSITES.equals(campsiteId)) {
+                localCache.clearCache();
+            } else {
+                localCache.invalidate(Long.valueOf(campsiteId));
+            }
+        }
+    }
+
+    private void publishInvalidation(String campsiteId) {
+        try {
+            stringRedisTemplate.convertAndSend(channel, instanceId + ":" + campsiteId);
+        } catch (Exception ex) {
+            // Other instances keep their copy until it expires
+            log.error("Error when publishing cache invalidation.", ex);
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.upgrade.campsite.domains.booking;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hashed timing wheel, expires any number of entries with a single periodic tick instead of a timer per entry.
+ * Entries go to the slot of their deadline tick and are expired when the wheel reaches that tick.
+ * An entry added while its slot is being swept is expired on the next turn at most, so deadlines are a lower bound.
+ */
+@Slf4j
+class TimingWheel<T> {
+
+    private final List<Queue<Entry<T>>> slots;
+    private final long tickMs;
+    private final Consumer<T> onExpiry;
+
+    // Only moved by the ticking thread
+    private volatile long currentTick;
+
+    TimingWheel(int size, long tickMs, Consumer<T> onExpiry) {
+        this.slots = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            slots.add(new ConcurrentLinkedQueue<>());
+        }
+        this.tickMs = tickMs;
+        this.onExpiry = onExpiry;
+    }
+
+    void add(T item, long delayMs) {
+        long deadline = currentTick + Math.max(1, (delayMs + tickMs - 1) / tickMs);
+        slots.get(index(deadline)).add(new Entry<>(item, deadline));
+    }
+
+    void tick() {
+        long tick = currentTick + 1;
+        currentTick = tick;
+
+        // Entries in the slot that are due on a later turn stay
+        Iterator<Entry<T>> entries = slots.get(index(tick)).iterator();
+        while (entries.hasNext()) {
+            Entry<T> entry = entries.next();
+            if (entry.deadline <= tick) {
+                entries.remove();
+                try {
+                    onExpiry.accept(entry.item);
+                } catch (Exception ex) {
+                    log.error("Error when expiring entry.", ex);
+                }
+            }
+        }
+    }
+
+    private int index(long tick) {
+        return (int) (tick % slots.size());
+    }
+
+    private static class Entry<T> {
+
+        private final T item;
+        private final long deadline;
+
+        private Entry(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+
+}
@@ -0,0 +1,291 @@
+package com.upgrade.campsite.domains.feed;
+
+import com.upgrade.campsite.constants.ErrorMessages;
+import com.upgrade.campsite.dtos.AvailabilityEventDTO;
+import com.upgrade.campsite.exceptions.FeedUnavailableException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Stream of booked and freed dates, kept in a fixed size ring buffer shared by all the subscribers.
+ * Each subscriber only keeps its offset in the buffer, so publishing never waits for slow clients:
+ * a subscriber that falls behind by more than the buffer size gets a resync event and must read the
+ * availability again, instead of the feed buffering for it.
+ * Writes to the clients run on their own executor and are only waited for a short while, a client that doesn't
+ * take an event in time is dropped, so slow clients never hold the threads draining the others.
+ * Idle subscribers get a heartbeat comment, which keeps proxies from closing the stream and finds dead clients.
+ */
+@Slf4j
+@Service
+public class AvailabilityFeed {
+
+    public static final String EVENT_CHANGE = "availability";
+    public static final String EVENT_RESYNC = "resync";
+    public static final String HEARTBEAT = "heartbeat";
+
+    @Autowired
+    @Qualifier("feedExecutor")
+    private Executor feedExecutor;
+
+    @Autowired
+    @Qualifier("feedWriterExecutor")
+    private AsyncTaskExecutor feedWriterExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${availability.feed.buffer-size:4096}")
+    private int bufferSize;
+
+    @Value("${availability.feed.max-subscribers:10000}")
+    private int maxSubscribers;
+
+    @Value("${availability.feed.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    // Events sent to a subscriber before giving the thread to the next one
+    @Value("${availability.feed.batch-size:100}")
+    private int batchSize;
+
+    // Longest wait for a client to take an event, slower clients are dropped and resume with Last-Event-ID
+    @Value("${availability.feed.send-timeout-ms:5000}")
+    private long sendTimeoutMs;
+
+    @Value("${availability.feed.heartbeat-ms:15000}")
+    private long heartbeatMs;
+
+    // Offsets only mean something for this run, so event ids carry the instance and resuming anywhere else resyncs
+    private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
+
+    private final Set<FeedSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private AtomicReferenceArray<AvailabilityEventDTO> buffer;
+
+    // Offset of the next event
+    private volatile long head;
+
+    private ScheduledExecutorService heartbeats;
+
+    @PostConstruct
+    public void init() {
+        buffer = new AtomicReferenceArray<>(bufferSize);
+
+        Gauge.builder("campsite.feed.subscribers", subscribers, Set::size)
+                .description("Clients following the availability feed")
+                .register(meterRegistry);
+
+        heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "feed-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats.scheduleAtFixedRate(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.shutdownNow();
+    }
+
+    /**
+     * Follows the feed, starting right after lastEventId when given, or with the next change otherwise.
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new FeedUnavailableException(ErrorMessages.FEED_UNAVAILABLE);
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        FeedSubscriber subscriber = new FeedSubscriber(emitter, getResumeOffset(lastEventId));
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(ex -> subscribers.remove(subscriber));
+
+        subscribers.add(subscriber);
+        schedule(subscriber);
+        return emitter;
+    }
+
+    // Dates found in both sets were moved within the same booking, so they didn't change
+    public void publish(Long campsiteId, Set<LocalDate> bookedDates, Set<LocalDate> freedDates) {
+        Set<LocalDate> booked = new HashSet<>(bookedDates);
+        booked.removeAll(freedDates);
+        Set<LocalDate> freed = new HashSet<>(freedDates);
+        freed.removeAll(bookedDates);
+        if (booked.isEmpty() && freed.isEmpty()) {
+            return;
+        }
+
+        append(campsiteId, booked, freed);
+        subscribers.forEach(this::schedule);
+    }
+
+    // Every subscriber gets a resync event, for when changes made on other instances were missed
+    public void publishResync() {
+        append(null, new HashSet<>(), new HashSet<>());
+        subscribers.forEach(this::schedule);
+    }
+
+    private synchronized void append(Long campsiteId, Set<LocalDate> bookedDates, Set<LocalDate> freedDates) {
+        long offset = head;
+        buffer.set(index(offset), AvailabilityEventDTO.builder()
+                .offset(offset)
+                .campsiteId(campsiteId)
+                .bookedDates(bookedDates)
+                .freedDates(freedDates)
+                .build());
+        // Only visible to subscribers once the event is in the buffer
+        head = offset + 1;
+    }
+
+    private void schedule(FeedSubscriber subscriber) {
+        if (!subscriber.schedule()) {
+            return;
+        }
+
+        try {
+            feedExecutor.execute(() -> drain(subscriber));
+        } catch (RejectedExecutionException ex) {
+            // Subscriber catches up on the next change
+            subscriber.unschedule();
+            log.warn("Feed executor is full, availability events will be sent on next change.");
+        }
+    }
+
+    // Subscribers that had events since the last heartbeat skip it
+    private void heartbeat() {
+        subscribers.forEach(subscriber -> {
+            subscriber.requestHeartbeat();
+            schedule(subscriber);
+        });
+    }
+
+    private void drain(FeedSubscriber subscriber) {
+        boolean heartbeat = subscriber.takeHeartbeat();
+        int sent = 0;
+        try {
+            for (; sent < batchSize && subscriber.getCursor() < head; sent++) {
+                long cursor = subscriber.getCursor();
+                AvailabilityEventDTO event = getEvent(cursor);
+
+                if (event == null || event.getCampsiteId() == null) {
+                    // Event was overwritten or is a resync, changes were missed so the client must read the availability again
+                    long lastOffset = head - 1;
+                    send(subscriber, SseEmitter.event()
+                            .id(toEventId(lastOffset))
+                            .name(EVENT_RESYNC)
+                            .data(AvailabilityEventDTO.builder().offset(lastOffset).build(), MediaType.APPLICATION_JSON));
+                    subscriber.setCursor(lastOffset + 1);
+                } else {
+                    send(subscriber, SseEmitter.event()
+                            .id(toEventId(cursor))
+                            .name(EVENT_CHANGE)
+                            .data(event, MediaType.APPLICATION_JSON));
+                    subscriber.setCursor(cursor + 1);
+                }
+            }
+
+            if (heartbeat && sent == 0) {
+                send(subscriber, SseEmitter.event().comment(HEARTBEAT));
+            }
+        } catch (TimeoutException ex) {
+            // Its send may stay blocked until the connection times out, the stream is closed once it's done
+            subscribers.remove(subscriber);
+            subscriber.drop();
+            log.debug("Feed subscriber didn't take an event in {} ms, dropped.", sendTimeoutMs);
+            return;
+        } catch (RejectedExecutionException ex) {
+            // Every writer is blocked on a slow client, subscriber catches up on the next change or heartbeat
+            log.warn("Feed writers are all busy, availability events will be sent on next change.");
+            return;
+        } catch (Exception ex) {
+            // Client is gone or its connection failed, it can resume from the last event it got
+            subscribers.remove(subscriber);
+            subscriber.getEmitter().completeWithError(ex);
+            return;
+        } finally {
+            subscriber.unschedule();
+        }
+
+        // Changes published while draining, or more than one batch behind
+        if (subscriber.getCursor() < head) {
+            schedule(subscriber);
+        }
+    }
+
+    // Waits for the write at most send-timeout-ms, instead of as long as the client takes
+    private void send(FeedSubscriber subscriber, SseEmitter.SseEventBuilder event) throws Exception {
+        Future<?> write = feedWriterExecutor.submit(() -> {
+            subscriber.send(event);
+            return null;
+        });
+
+        try {
+            write.get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        }
+    }
+
+    // Null when the event was already overwritten
+    private AvailabilityEventDTO getEvent(long offset) {
+        if (offset < 0) {
+            return null;
+        }
+        AvailabilityEventDTO event = buffer.get(index(offset));
+        return event != null && event.getOffset() == offset ? event : null;
+    }
+
+    // Unknown ids resume from an offset that is never in the buffer, so the subscriber starts with a resync
+    private long getResumeOffset(String lastEventId) {
+        if (lastEventId == null) {
+            return head;
+        }
+
+        if (instanceId.equals(StringUtils.substringBeforeLast(lastEventId, ":"))) {
+            try {
+                long lastOffset = Long.parseLong(StringUtils.substringAfterLast(lastEventId, ":"));
+                if (lastOffset < head) {
+                    return lastOffset + 1;
+                }
+            } catch (NumberFormatException ex) {
+                log.debug("Invalid feed event id {}.", lastEventId);
+            }
+        }
+        return -1;
+    }
+
+    private String toEventId(long offset) {
+        return instanceId + ":" + offset;
+    }
+
+    private int index(long offset) {
+        return (int) (offset % bufferSize);
+    }
+
+}
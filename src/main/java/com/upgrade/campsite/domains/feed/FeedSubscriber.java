@@ -0,0 +1,81 @@
+package com.upgrade.campsite.domains.feed;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * A client following the feed, with its own position in the ring buffer.
+ * Only one drain runs at a time for a subscriber, guarded by the scheduled flag.
+ */
+class FeedSubscriber {
+
+    private final SseEmitter emitter;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean heartbeatDue = new AtomicBoolean();
+
+    // Set once the client was too slow, it is sent nothing else
+    private volatile boolean dropped;
+
+    private volatile boolean sending;
+
+    // Offset of the next event to send
+    private volatile long cursor;
+
+    FeedSubscriber(SseEmitter emitter, long cursor) {
+        this.emitter = emitter;
+        this.cursor = cursor;
+    }
+
+    SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    long getCursor() {
+        return cursor;
+    }
+
+    void setCursor(long cursor) {
+        this.cursor = cursor;
+    }
+
+    boolean schedule() {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    void unschedule() {
+        scheduled.set(false);
+    }
+
+    // The stream is closed once no send is blocked on it, so the client reconnects instead of waiting for events
+    // Whichever of the drop and the blocked send ends last closes it, the emitter doesn't allow it during a send
+    void drop() {
+        dropped = true;
+        if (!sending) {
+            emitter.complete();
+        }
+    }
+
+    void requestHeartbeat() {
+        heartbeatDue.set(true);
+    }
+
+    // Whether a heartbeat was requested since the last call
+    boolean takeHeartbeat() {
+        return heartbeatDue.getAndSet(false);
+    }
+
+    void send(SseEmitter.SseEventBuilder event) throws IOException {
+        sending = true;
+        try {
+            emitter.send(event);
+        } finally {
+            sending = false;
+        }
+
+        if (dropped) {
+            emitter.complete();
+        }
+    }
+
+}
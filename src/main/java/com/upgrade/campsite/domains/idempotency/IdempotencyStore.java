@@ -0,0 +1,257 @@
+package com.upgrade.campsite.domains.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upgrade.campsite.constants.ErrorMessages;
+import com.upgrade.campsite.domains.booking.BookedDatesCache;
+import com.upgrade.campsite.exceptions.InvalidInputException;
+import com.upgrade.campsite.exceptions.RequestInProgressException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.stereotype.Component;
+
+/**
+ * Results of requests sent with an Idempotency-Key, so retries get the original result without running again.
+ * Results are kept in a bounded in-process store, with a Redis tier shared by every instance, both expiring
+ * after the TTL. Only successful results are kept, a failed request can be retried with the same key.
+ * Keys can't be reused for a different request. Without Redis (cache.type local) results are only kept in process.
+ * Before running, the key is reserved in Redis so a retry on another instance waits for the result instead of
+ * running again, and gets a conflict if it isn't ready in time.
+ */
+@Slf4j
+@Component
+public class IdempotencyStore {
+
+    @Value("#{'${cache.type:redis}' != '" + BookedDatesCache.TYPE_LOCAL + "'}")
+    private boolean redisEnabled;
+
+    @Value("${idempotency.redis.key:IDEMPOTENCY}")
+    private String KEY;
+
+    @Value("${idempotency.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    @Value("${idempotency.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${idempotency.pending-ttl-ms:30000}")
+    private long pendingTtlMs;
+
+    @Value("${idempotency.wait-ms:5000}")
+    private long waitMs;
+
+    @Resource(name = "stringRedisTemplate")
+    private ValueOperations<String, String> valueOps;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Least recently used results are evicted first
+    private final Map<String, StoredResult> results = new LinkedHashMap<String, StoredResult>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, StoredResult> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    // Requests running on this instance, a retry waits for the original instead of running too
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    // Value of a reserved key while the request runs, results are stored as hash:json
+    private static final String PENDING = "pending";
+
+    private static final long POLL_MS = 50;
+
+    public <T> T execute(String key, Object request, Class<T> type, Supplier<T> action) {
+        int requestHash = request.hashCode();
+        T result = get(key, requestHash, type);
+        if (result != null) {
+            return result;
+        }
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            try {
+                return type.cast(running.join());
+            } catch (CompletionException ex) {
+                throw (RuntimeException) ex.getCause();
+            }
+        }
+
+        try {
+            // Original may have finished right before this request was registered
+            result = get(key, requestHash, type);
+            if (result == null) {
+                result = executeReserved(key, requestHash, type, action);
+            }
+            future.complete(result);
+            return result;
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private <T> T executeReserved(String key, int requestHash, Class<T> type, Supplier<T> action) {
+        long waitUntil = System.currentTimeMillis() + waitMs;
+        while (!reserve(key)) {
+            // Another instance is running the same request, its result is read once stored
+            T result = get(key, requestHash, type);
+            if (result != null) {
+                return result;
+            }
+            if (System.currentTimeMillis() >= waitUntil) {
+                throw new RequestInProgressException(ErrorMessages.IDEMPOTENCY_KEY_IN_PROGRESS);
+            }
+
+            try {
+                Thread.sleep(POLL_MS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RequestInProgressException(ErrorMessages.IDEMPOTENCY_KEY_IN_PROGRESS);
+            }
+        }
+
+        try {
+            T result = action.get();
+            put(key, requestHash, result);
+            return result;
+        } catch (RuntimeException ex) {
+            // Failed requests aren't stored, so the key can be retried right away
+            release(key);
+            throw ex;
+        }
+    }
+
+    private boolean reserve(String key) {
+        if (!redisEnabled) {
+            return true;
+        }
+
+        try {
+            return Boolean.TRUE.equals(valueOps.setIfAbsent(getKey(key), PENDING, pendingTtlMs, TimeUnit.MILLISECONDS));
+        } catch (Exception ex) {
+            // Without Redis retries are only de-duplicated on this instance
+            log.error("Error when accessing cache.", ex);
+            return true;
+        }
+    }
+
+    private void release(String key) {
+        if (!redisEnabled) {
+            return;
+        }
+
+        try {
+            valueOps.getOperations().delete(getKey(key));
+        } catch (Exception ex) {
+            log.error("Error when accessing cache.", ex);
+        }
+    }
+
+    private <T> T get(String key, int requestHash, Class<T> type) {
+        StoredResult stored;
+        synchronized (results) {
+            stored = results.get(key);
+        }
+
+        if (stored == null || stored.expiresAt < System.currentTimeMillis()) {
+            stored = getFromCache(key);
+        }
+
+        if (stored == null) {
+            return null;
+        }
+        if (stored.requestHash != requestHash) {
+            throw new InvalidInputException(ErrorMessages.IDEMPOTENCY_KEY_REUSED);
+        }
+
+        try {
+            return objectMapper.readValue(stored.result, type);
+        } catch (Exception ex) {
+            log.error("Error when reading idempotent result.", ex);
+            return null;
+        }
+    }
+
+    private StoredResult getFromCache(String key) {
+        if (!redisEnabled) {
+            return null;
+        }
+
+        try {
+            String value = valueOps.get(getKey(key));
+            if (value != null && !PENDING.equals(value)) {
+                Long ttl = valueOps.getOperations().getExpire(getKey(key), TimeUnit.MILLISECONDS);
+                StoredResult stored = new StoredResult(
+                        Integer.parseInt(value.substring(0, value.indexOf(':'))),
+                        value.substring(value.indexOf(':') + 1),
+                        System.currentTimeMillis() + (ttl != null && ttl > 0 ? ttl : 0));
+                synchronized (results) {
+                    results.put(key, stored);
+                }
+                return stored;
+            }
+        } catch (Exception ex) {
+            log.error("Error when accessing cache.", ex);
+        }
+
+        return null;
+    }
+
+    private void put(String key, int requestHash, Object result) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(result);
+        } catch (Exception ex) {
+            log.error("Error when storing idempotent result.", ex);
+            release(key);
+            return;
+        }
+
+        synchronized (results) {
+            results.put(key, new StoredResult(requestHash, json, System.currentTimeMillis() + ttlSeconds * 1000));
+        }
+
+        if (!redisEnabled) {
+            return;
+        }
+
+        try {
+            valueOps.set(getKey(key), requestHash + ":" + json, ttlSeconds, TimeUnit.SECONDS);
+        } catch (Exception ex) {
+            log.error("Error when accessing cache.", ex);
+        }
+    }
+
+    private String getKey(String key) {
+        return KEY + ":" + key;
+    }
+
+    private static class StoredResult {
+
+        private final int requestHash;
+        private final String result;
+        private final long expiresAt;
+
+        private StoredResult(int requestHash, String result, long expiresAt) {
+            this.requestHash = requestHash;
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.upgrade.campsite.domains.outbox;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Cache change written in the same transaction as the booking change.
+ * Ids come from an identity column, so they follow insert order and conflicting changes are relayed in commit order.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheOutboxEvent {
+
+    @Id
+    @Column
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column
+    private Long campsiteId;
+
+    @Column
+    @Builder.Default
+    @Convert(converter = LocalDateSetConverter.class)
+    private Set<LocalDate> addedDates = new HashSet<>();
+
+    @Column
+    @Builder.Default
+    @Convert(converter = LocalDateSetConverter.class)
+    private Set<LocalDate> removedDates = new HashSet<>();
+
+    @Column
+    @Builder.Default
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+}
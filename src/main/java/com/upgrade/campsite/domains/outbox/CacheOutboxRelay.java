@@ -0,0 +1,91 @@
+package com.upgrade.campsite.domains.outbox;
+
+import com.upgrade.campsite.domains.booking.BookedDatesCache;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Applies the outbox events to the cache in order, in batches.
+ * Events are deleted only once applied, so a cache failure leaves them in place to be retried on the next run.
+ */
+@Slf4j
+@Service
+public class CacheOutboxRelay {
+
+    @Autowired
+    private CacheOutboxRepository outboxRepository;
+
+    @Autowired
+    private BookedDatesCache cachingService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    @Qualifier("cacheExecutor")
+    private Executor cacheExecutor;
+
+    @Value("${cache.outbox.batch-size:100}")
+    private int batchSize;
+
+    private final AtomicBoolean relayQueued = new AtomicBoolean();
+
+    public void saveEvent(Long campsiteId, Set<LocalDate> addedDates, Set<LocalDate> removedDates) {
+        outboxRepository.save(CacheOutboxEvent.builder()
+                .campsiteId(campsiteId)
+                .addedDates(addedDates)
+                .removedDates(removedDates)
+                .build());
+    }
+
+    // Called after a booking change is committed, so the cache is updated right away instead of on the next run
+    // A queued relay applies every pending event, so changes made while it waits are coalesced into it
+    public void triggerRelay() {
+        if (!relayQueued.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            cacheExecutor.execute(() -> {
+                relayQueued.set(false);
+                relay();
+            });
+        } catch (RejectedExecutionException ex) {
+            relayQueued.set(false);
+            log.warn("Cache executor is full, changes will be relayed on next scheduled run.");
+        }
+    }
+
+    public synchronized void relay() {
+        try {
+            boolean hasMore = true;
+            while (hasMore) {
+                hasMore = transactionTemplate.execute(status -> relayBatch());
+            }
+        } catch (Exception ex) {
+            log.error("Error when relaying cache changes, will retry on next run.", ex);
+        }
+    }
+
+    private boolean relayBatch() {
+        List<CacheOutboxEvent> events = outboxRepository.findNextBatch(PageRequest.of(0, batchSize));
+        for (CacheOutboxEvent event : events) {
+            cachingService.applyChanges(event.getCampsiteId(), event.getAddedDates(), event.getRemovedDates());
+        }
+        outboxRepository.deleteInBatch(events);
+
+        return events.size() == batchSize;
+    }
+
+}
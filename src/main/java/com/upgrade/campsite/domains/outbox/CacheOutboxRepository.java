@@ -0,0 +1,21 @@
+package com.upgrade.campsite.domains.outbox;
+
+import java.util.List;
+import javax.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CacheOutboxRepository extends JpaRepository<CacheOutboxEvent, Long> {
+
+    // Rows stay locked until the batch is relayed, so only one instance relays them
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query(value = "SELECT e "
+            + " FROM CacheOutboxEvent e "
+            + " ORDER BY e.id ")
+    public List<CacheOutboxEvent> findNextBatch(Pageable pageable);
+
+}
@@ -0,0 +1,39 @@
+package com.upgrade.campsite.domains.outbox;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import org.apache.commons.lang3.StringUtils;
+
+// Stores a set of dates as a comma separated list of ISO dates
+@Converter
+public class LocalDateSetConverter implements AttributeConverter<Set<LocalDate>, String> {
+
+    @Override
+    public String convertToDatabaseColumn(Set<LocalDate> dates) {
+        if (dates == null) {
+            return "";
+        }
+
+        return dates.stream()
+                .sorted()
+                .map(LocalDate::toString)
+                .collect(Collectors.joining(","));
+    }
+
+    @Override
+    public Set<LocalDate> convertToEntityAttribute(String dates) {
+        if (StringUtils.isBlank(dates)) {
+            return new HashSet<>();
+        }
+
+        return Arrays.stream(dates.split(","))
+                .map(LocalDate::parse)
+                .collect(Collectors.toSet());
+    }
+
+}
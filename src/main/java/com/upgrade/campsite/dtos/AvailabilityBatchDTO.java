@@ -0,0 +1,27 @@
+package com.upgrade.campsite.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.ArrayList;
+import java.util.List;
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(name = "Availability_Batch")
+public class AvailabilityBatchDTO {
+
+    @Valid
+    @NotEmpty
+    @Size(max = 100)
+    @Builder.Default
+    private List<AvailabilityQueryDTO> queries = new ArrayList<>();
+
+}
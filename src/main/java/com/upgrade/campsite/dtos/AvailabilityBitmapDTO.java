@@ -0,0 +1,27 @@
+package com.upgrade.campsite.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.LocalDate;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Availability as a bitmask, bit i (least significant first) of byte i / 8 is set when startDate + i is available.
+ * The mask is serialized as a base64 string.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(name = "Availability_Bitmap")
+public class AvailabilityBitmapDTO {
+
+    private LocalDate startDate;
+
+    private int days;
+
+    private byte[] mask;
+
+}
@@ -0,0 +1,26 @@
+package com.upgrade.campsite.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.LocalDate;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(name = "Availability")
+public class AvailabilityDTO {
+
+    private Long campsiteId;
+
+    private LocalDate startDate;
+
+    private LocalDate endDate;
+
+    private List<LocalDate> availableDates;
+
+}
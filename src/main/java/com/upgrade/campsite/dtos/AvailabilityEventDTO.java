@@ -0,0 +1,26 @@
+package com.upgrade.campsite.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.LocalDate;
+import java.util.Set;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(name = "Availability_Event")
+public class AvailabilityEventDTO {
+
+    private long offset;
+
+    private Long campsiteId;
+
+    private Set<LocalDate> bookedDates;
+
+    private Set<LocalDate> freedDates;
+
+}
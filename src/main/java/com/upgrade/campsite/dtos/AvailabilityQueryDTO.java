@@ -0,0 +1,33 @@
+package com.upgrade.campsite.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.LocalDate;
+import javax.validation.constraints.FutureOrPresent;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(name = "Availability_Query")
+public class AvailabilityQueryDTO {
+
+    @NotNull
+    @Min(1)
+    @Builder.Default
+    private Long campsiteId = 1L;
+
+    // Defaults to today
+    @FutureOrPresent
+    private LocalDate startDate;
+
+    // Defaults to 30 days from startDate
+    @FutureOrPresent
+    private LocalDate endDate;
+
+}
@@ -0,0 +1,27 @@
+package com.upgrade.campsite.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.ArrayList;
+import java.util.List;
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(name = "Booking_Batch")
+public class BookingBatchDTO {
+
+    @Valid
+    @NotEmpty
+    @Size(max = 1000)
+    @Builder.Default
+    private List<BookingDTO> bookings = new ArrayList<>();
+
+}
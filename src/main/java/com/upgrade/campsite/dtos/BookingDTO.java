@@ -3,6 +3,7 @@ package com.upgrade.campsite.dtos;
 import io.swagger.v3.oas.annotations.media.Schema;
 import java.time.LocalDate;
 import javax.validation.constraints.Future;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
@@ -19,6 +20,15 @@ public class BookingDTO {
 
     private String bookingId;
 
+    // Hold made during checkout, its dates are booked by this booking
+    private String holdId;
+
+    // Deployments with a single campsite don't need to send it
+    @NotNull
+    @Min(1)
+    @Builder.Default
+    private Long campsiteId = 1L;
+
     @NotBlank
     private String email;
 
@@ -0,0 +1,26 @@
+package com.upgrade.campsite.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of one booking of a batch, either the booking made or the reason it was not.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(name = "Booking_Result")
+public class BookingResultDTO {
+
+    // Position of the booking in the batch
+    private int index;
+
+    private BookingDTO booking;
+
+    private String error;
+
+}
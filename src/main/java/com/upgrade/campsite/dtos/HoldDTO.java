@@ -0,0 +1,39 @@
+package com.upgrade.campsite.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import javax.validation.constraints.Future;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(name = "Hold")
+public class HoldDTO {
+
+    private String holdId;
+
+    @NotNull
+    @Min(1)
+    @Builder.Default
+    private Long campsiteId = 1L;
+
+    @NotNull
+    @Future
+    private LocalDate startDate;
+
+    @NotNull
+    @Future
+    private LocalDate endDate;
+
+    // Dates are released after this, unless booked
+    private LocalDateTime expiresAt;
+
+}
@@ -0,0 +1,8 @@
+package com.upgrade.campsite.exceptions;
+
+public class FeedUnavailableException extends RuntimeException {
+
+    public FeedUnavailableException(String s) {
+        super(s);
+    }
+}
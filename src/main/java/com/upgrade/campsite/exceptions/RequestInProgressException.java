@@ -0,0 +1,8 @@
+package com.upgrade.campsite.exceptions;
+
+public class RequestInProgressException extends RuntimeException {
+
+    public RequestInProgressException(String s) {
+        super(s);
+    }
+}
@@ -0,0 +1,22 @@
+package com.upgrade.campsite.scheduled;
+
+import com.upgrade.campsite.domains.archive.BookingArchiver;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+
+@Slf4j
+@DisallowConcurrentExecution
+public class BookingArchiveJob implements Job {
+
+    @Autowired
+    private BookingArchiver bookingArchiver;
+
+    @Override
+    public void execute(JobExecutionContext context) {
+        log.info("Archiving finished bookings.");
+        bookingArchiver.archive();
+    }
+}
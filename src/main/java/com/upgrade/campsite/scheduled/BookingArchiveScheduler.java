@@ -0,0 +1,46 @@
+package com.upgrade.campsite.scheduled;
+
+import java.util.TimeZone;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(
+        value = "booking.archive.enable",
+        havingValue = "true",
+        matchIfMissing = true)
+public class BookingArchiveScheduler {
+
+    @Value("${booking.archive.schedule}")
+    private String bookingArchiveSchedule;
+
+    @Value("${campsite.timezone}")
+    private String timezone;
+
+    @Bean(name = "bookingArchiveDetails")
+    public JobDetail bookingArchiveDetails() {
+        return JobBuilder
+                .newJob(BookingArchiveJob.class)
+                .withIdentity("bookingArchiveDetails")
+                .storeDurably()
+                .build();
+    }
+
+    @Bean
+    public Trigger bookingArchiveTrigger(JobDetail bookingArchiveDetails) {
+        return TriggerBuilder.newTrigger()
+                .forJob(bookingArchiveDetails)
+                .withIdentity("bookingArchiveTrigger")
+                .withSchedule(CronScheduleBuilder.cronSchedule(bookingArchiveSchedule)
+                        .inTimeZone(TimeZone.getTimeZone(timezone)))
+                .build();
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.upgrade.campsite.scheduled;
+
+import com.upgrade.campsite.domains.outbox.CacheOutboxRelay;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+
+@DisallowConcurrentExecution
+public class CacheOutboxRelayJob implements Job {
+
+    @Autowired
+    private CacheOutboxRelay outboxRelay;
+
+    @Override
+    public void execute(JobExecutionContext context) {
+        outboxRelay.relay();
+    }
+}
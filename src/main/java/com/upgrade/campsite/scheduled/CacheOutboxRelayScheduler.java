@@ -0,0 +1,46 @@
+package com.upgrade.campsite.scheduled;
+
+import java.util.TimeZone;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(
+        value = "cache.outbox.enable",
+        havingValue = "true",
+        matchIfMissing = true)
+public class CacheOutboxRelayScheduler {
+
+    @Value("${cache.outbox.schedule}")
+    private String cacheOutboxSchedule;
+
+    @Value("${campsite.timezone}")
+    private String timezone;
+
+    @Bean(name = "cacheOutboxRelayDetails")
+    public JobDetail cacheOutboxRelayDetails() {
+        return JobBuilder
+                .newJob(CacheOutboxRelayJob.class)
+                .withIdentity("cacheOutboxRelayDetails")
+                .storeDurably()
+                .build();
+    }
+
+    @Bean
+    public Trigger cacheOutboxRelayTrigger(JobDetail cacheOutboxRelayDetails) {
+        return TriggerBuilder.newTrigger()
+                .forJob(cacheOutboxRelayDetails)
+                .withIdentity("cacheOutboxRelayTrigger")
+                .withSchedule(CronScheduleBuilder.cronSchedule(cacheOutboxSchedule)
+                        .inTimeZone(TimeZone.getTimeZone(timezone)))
+                .build();
+    }
+
+}
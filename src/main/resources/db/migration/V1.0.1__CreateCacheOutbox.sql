@@ -0,0 +1,13 @@
+
+-----------------------------------------------
+-- Create Cache Outbox
+-----------------------------------------------
+
+CREATE TABLE cache_outbox_event
+  (
+     id             BIGINT AUTO_INCREMENT NOT NULL,
+     added_dates    VARCHAR NOT NULL,
+     removed_dates  VARCHAR NOT NULL,
+     created_at     TIMESTAMP NOT NULL,
+     PRIMARY KEY (id)
+  );
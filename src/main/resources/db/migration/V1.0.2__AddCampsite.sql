@@ -0,0 +1,20 @@
+
+-----------------------------------------------
+-- Add Campsite To Bookings
+-- Existing bookings belong to the original campsite
+-----------------------------------------------
+
+ALTER TABLE booking
+  ADD COLUMN campsite_id INTEGER DEFAULT 1 NOT NULL;
+
+ALTER TABLE booking_date
+  ADD COLUMN campsite_id INTEGER DEFAULT 1 NOT NULL;
+
+ALTER TABLE booking_date
+  DROP CONSTRAINT date_unique;
+
+ALTER TABLE booking_date
+  ADD CONSTRAINT campsite_date_unique UNIQUE (campsite_id, date);
+
+ALTER TABLE cache_outbox_event
+  ADD COLUMN campsite_id INTEGER DEFAULT 1 NOT NULL;
@@ -0,0 +1,21 @@
+-----------------------------------------------
+-- Add Date Range To Bookings
+-- Bookings keep their range, so reading one doesn't need its dates
+-- booking_date still has one row per night, as its unique constraint prevents double bookings
+-----------------------------------------------
+
+ALTER TABLE booking
+  ADD COLUMN start_date DATE;
+
+ALTER TABLE booking
+  ADD COLUMN end_date DATE;
+
+UPDATE booking b
+   SET start_date = (SELECT MIN(d.date) FROM booking_date d WHERE d.booking_id = b.id),
+       end_date = (SELECT MAX(d.date) FROM booking_date d WHERE d.booking_id = b.id);
+
+ALTER TABLE booking
+  ALTER COLUMN start_date SET NOT NULL;
+
+ALTER TABLE booking
+  ALTER COLUMN end_date SET NOT NULL;
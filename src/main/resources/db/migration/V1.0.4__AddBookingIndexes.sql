@@ -0,0 +1,18 @@
+-----------------------------------------------
+-- Add Booking Indexes
+-----------------------------------------------
+
+-- Dates of a booking are loaded and deleted by booking_id (foreign keys are not indexed by every DB)
+CREATE INDEX booking_date_booking_id_idx
+  ON booking_date (booking_id);
+
+-- Booking ids are unique, so lookups stop at the first match
+DROP INDEX booking_id_idx;
+
+CREATE UNIQUE INDEX booking_id_unique_idx
+  ON booking (booking_id);
+
+-- Scheduled dates of every campsite, campsite_id is included so the query is answered from the index
+-- Scheduled dates of a single campsite are covered by campsite_date_unique (campsite_id, date)
+CREATE INDEX booking_date_date_idx
+  ON booking_date (date, campsite_id);
@@ -0,0 +1,24 @@
+-----------------------------------------------
+-- Create Booking Archive
+-- Finished bookings are moved here, so the live tables only hold the booking horizon
+-----------------------------------------------
+
+CREATE TABLE booking_archive
+  (
+     id           INTEGER NOT NULL,
+     booking_id   VARCHAR NOT NULL,
+     campsite_id  INTEGER NOT NULL,
+     name         VARCHAR NOT NULL,
+     email        VARCHAR NOT NULL,
+     start_date   DATE NOT NULL,
+     end_date     DATE NOT NULL,
+     archived_at  TIMESTAMP NOT NULL,
+     PRIMARY KEY (id)
+  );
+
+CREATE UNIQUE INDEX booking_archive_booking_id_idx
+  ON booking_archive (booking_id);
+
+-- Finished bookings are found by end date
+CREATE INDEX booking_end_date_idx
+  ON booking (end_date);
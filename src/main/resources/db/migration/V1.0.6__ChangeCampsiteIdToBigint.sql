@@ -0,0 +1,16 @@
+-----------------------------------------------
+-- Change Campsite Ids To Bigint
+-- Campsite ids are Long in the entities
+-----------------------------------------------
+
+ALTER TABLE booking
+  ALTER COLUMN campsite_id SET DATA TYPE BIGINT;
+
+ALTER TABLE booking_date
+  ALTER COLUMN campsite_id SET DATA TYPE BIGINT;
+
+ALTER TABLE cache_outbox_event
+  ALTER COLUMN campsite_id SET DATA TYPE BIGINT;
+
+ALTER TABLE booking_archive
+  ALTER COLUMN campsite_id SET DATA TYPE BIGINT;
@@ -0,0 +1,12 @@
+-- Frees and books dates of a campsite in one step, so readers never see a modified booking half applied
+-- KEYS[1]: booked dates of the campsite, KEYS[2]: number of changes applied to the campsite, checked by syncs
+-- ARGV[1]: number of dates to free, followed by their members, then score and member of each date to book
+local removed = tonumber(ARGV[1])
+for i = 2, removed + 1 do
+    redis.call('ZREM', KEYS[1], ARGV[i])
+end
+for i = removed + 2, #ARGV, 2 do
+    redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i + 1])
+end
+redis.call('INCR', KEYS[2])
+return removed
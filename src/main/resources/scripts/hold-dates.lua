@@ -0,0 +1,15 @@
+-- Holds dates of a campsite in one step, all of them or none when another hold has any of the dates
+-- KEYS[1]: contents of the hold, followed by the key of each held date
+-- ARGV[1]: hold id, ARGV[2]: TTL in seconds, ARGV[3]: contents of the hold
+-- Returns 1 when the dates are held, 0 without writing anything when any of them is already held
+for i = 2, #KEYS do
+    if redis.call('EXISTS', KEYS[i]) == 1 then
+        return 0
+    end
+end
+
+for i = 2, #KEYS do
+    redis.call('SET', KEYS[i], ARGV[1], 'EX', ARGV[2])
+end
+redis.call('SET', KEYS[1], ARGV[3], 'EX', ARGV[2])
+return 1
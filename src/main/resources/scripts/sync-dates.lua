@@ -0,0 +1,37 @@
+-- Brings the booked dates of a campsite in line with the given ones in one step, only writing the differences
+-- KEYS[1]: booked dates of the campsite, KEYS[2]: day the campsite was loaded from, KEYS[3]: loaded campsites,
+-- KEYS[4]: number of changes applied to the campsite
+-- ARGV[1]: day to load from, ARGV[2]: campsite id, ARGV[3]: number of changes applied before the dates were read,
+-- then score and member of each booked date
+-- Returns the number of dates added or removed, or -1 without writing anything when changes were applied since the
+-- dates were read, as the dates they booked are not in the given ones and would be removed
+if tonumber(redis.call('GET', KEYS[4]) or '0') ~= tonumber(ARGV[3]) then
+    return -1
+end
+
+redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', '(' .. ARGV[1])
+
+local booked = {}
+for i = 4, #ARGV, 2 do
+    booked[ARGV[i + 1]] = ARGV[i]
+end
+
+local removed = 0
+for _, member in ipairs(redis.call('ZRANGEBYSCORE', KEYS[1], ARGV[1], '+inf')) do
+    if booked[member] then
+        booked[member] = nil
+    else
+        redis.call('ZREM', KEYS[1], member)
+        removed = removed + 1
+    end
+end
+
+local added = 0
+for member, score in pairs(booked) do
+    redis.call('ZADD', KEYS[1], score, member)
+    added = added + 1
+end
+
+redis.call('SET', KEYS[2], ARGV[1])
+redis.call('SADD', KEYS[3], ARGV[2])
+return added + removed
@@ -3,10 +3,15 @@ package com.upgrade.campsite;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.upgrade.campsite.domains.archive.ArchivedBookingRepository;
 import com.upgrade.campsite.domains.booking.Booking;
+import com.upgrade.campsite.domains.booking.BookingHolds;
+import com.upgrade.campsite.domains.booking.BookingNearCache;
 import com.upgrade.campsite.domains.booking.BookingRepository;
 import com.upgrade.campsite.domains.booking.BookingService;
 import com.upgrade.campsite.domains.booking.BookingCacheService;
+import com.upgrade.campsite.domains.outbox.CacheOutboxRelay;
+import com.upgrade.campsite.dtos.AvailabilityQueryDTO;
 import com.upgrade.campsite.dtos.BookingDTO;
 import com.upgrade.campsite.dtos.ModifyBookingDTO;
 import java.time.LocalDate;
@@ -24,6 +29,8 @@ import org.springframework.transaction.annotation.Transactional;
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes = {Application.class})
 public abstract class AbstractTest {
 
+    public static final Long CAMPSITE_ID = 1L;
+
     @Autowired
     public BookingService bookingService;
 
@@ -33,6 +40,18 @@ public abstract class AbstractTest {
     @Autowired
     public BookingRepository bookingRepository;
 
+    @Autowired
+    public ArchivedBookingRepository archivedBookingRepository;
+
+    @Autowired
+    public CacheOutboxRelay outboxRelay;
+
+    @Autowired
+    public BookingHolds bookingHolds;
+
+    @Autowired
+    public BookingNearCache bookingNearCache;
+
     // ============================
     // = UTILS
     // ============================
@@ -48,9 +67,12 @@ public abstract class AbstractTest {
                 .bookingId(UUID.randomUUID().toString())
                 .name("Test name")
                 .email("test@gmail.com")
-                .date(starDate
+                .campsiteId(CAMPSITE_ID)
+                .startDate(starDate)
+                .endDate(endDate)
+                .date(Booking.toBookingDates(CAMPSITE_ID, starDate
                         .datesUntil(endDate.plusDays(1))
-                        .collect(Collectors.toSet()))
+                        .collect(Collectors.toSet())))
                 .build();
 
         bookingRepository.save(booking);
@@ -78,6 +100,16 @@ public abstract class AbstractTest {
         return booking;
     }
 
+    public AvailabilityQueryDTO createAvailabilityQueryDTO(Long campsiteId, LocalDate starDate, LocalDate endDate) {
+        AvailabilityQueryDTO query = AvailabilityQueryDTO.builder()
+                .campsiteId(campsiteId)
+                .startDate(starDate)
+                .endDate(endDate)
+                .build();
+
+        return query;
+    }
+
     public String toJson(Object booking) throws JsonProcessingException {
         ObjectMapper mapper = new ObjectMapper();
         mapper.registerModule(new JavaTimeModule());
@@ -87,7 +119,12 @@ public abstract class AbstractTest {
     @Transactional
     public void deleteAll() {
         bookingRepository.deleteAll();
+        archivedBookingRepository.deleteAll();
+        bookingHolds.releaseAll();
+        bookingNearCache.clear();
+        outboxRelay.relay();
         cachingService.clearCache();
+        bookingService.resetCache();
     }
 
 }
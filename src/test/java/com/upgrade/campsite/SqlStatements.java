@@ -0,0 +1,33 @@
+package com.upgrade.campsite;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Records every SQL statement prepared by Hibernate, set as its statement inspector in the test profile.
+ * Statements of batched writes are only recorded once per batch.
+ */
+public class SqlStatements implements StatementInspector {
+
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENTS.add(sql.toLowerCase());
+        return sql;
+    }
+
+    public static void clear() {
+        STATEMENTS.clear();
+    }
+
+    // Recorded statements starting with the given prefix, e.g. "delete from booking_date"
+    public static List<String> get(String prefix) {
+        return STATEMENTS.stream()
+                .filter(s -> s.startsWith(prefix))
+                .collect(Collectors.toList());
+    }
+
+}
@@ -1,19 +1,35 @@
 package com.upgrade.campsite.controllers;
 
+import com.jayway.jsonpath.JsonPath;
 import com.upgrade.campsite.AbstractTest;
 import com.upgrade.campsite.domains.booking.Booking;
+import com.upgrade.campsite.domains.feed.AvailabilityFeed;
+import com.upgrade.campsite.dtos.AvailabilityBatchDTO;
+import com.upgrade.campsite.dtos.BookingBatchDTO;
 import com.upgrade.campsite.dtos.BookingDTO;
+import com.upgrade.campsite.dtos.HoldDTO;
 import com.upgrade.campsite.dtos.ModifyBookingDTO;
 import org.junit.Test;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.UUID;
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 
@@ -23,6 +39,9 @@ public class BookingControllerTests extends AbstractTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
     @Before
     public void before() {
         deleteAll();
@@ -40,6 +59,155 @@ public class BookingControllerTests extends AbstractTest {
                 .andExpect(jsonPath("$", hasSize(31)));
     }
 
+    @Test
+    public void givenBitmapFormatShouldReturnAvailabilityMask() throws Exception {
+        mockMvc.perform(get("/api/booking/availableDates")
+                .param("startDate", LocalDate.now().toString())
+                .param("endDate", LocalDate.now().plusDays(15).toString())
+                .param("format", "bitmap"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.days", is(16)))
+                .andExpect(jsonPath("$.mask", is("//8=")));
+    }
+
+    @Test
+    public void givenOctetStreamAcceptShouldReturnBinaryMask() throws Exception {
+        mockMvc.perform(get("/api/booking/availableDates")
+                .param("startDate", LocalDate.now().toString())
+                .param("endDate", LocalDate.now().plusDays(15).toString())
+                .accept(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(content().bytes(ByteBuffer.allocate(10)
+                        .putInt((int) LocalDate.now().toEpochDay())
+                        .putInt(16)
+                        .put((byte) 0xFF)
+                        .put((byte) 0xFF)
+                        .array()));
+    }
+
+    @Test
+    public void givenAcceptPreferringJsonShouldReturnDatesVaryingByAccept() throws Exception {
+        mockMvc.perform(get("/api/booking/availableDates")
+                .param("startDate", LocalDate.now().toString())
+                .param("endDate", LocalDate.now().plusDays(15).toString())
+                .header(HttpHeaders.ACCEPT, "application/octet-stream;q=0.5, application/json"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)))
+                .andExpect(jsonPath("$", hasSize(16)));
+    }
+
+    @Test
+    public void givenAcceptPreferringBitmapShouldReturnAvailabilityMask() throws Exception {
+        mockMvc.perform(get("/api/booking/availableDates")
+                .param("startDate", LocalDate.now().toString())
+                .param("endDate", LocalDate.now().plusDays(15).toString())
+                .header(HttpHeaders.ACCEPT, "*/*;q=0.1, " + BookingController.AVAILABILITY_BITMAP_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.mask", is("//8=")));
+    }
+
+    @Test
+    public void givenMatchingETagShouldReturnNotModifiedWithVaryHeader() throws Exception {
+        String eTag = mockMvc.perform(get("/api/booking/availableDates")
+                .param("startDate", LocalDate.now().toString())
+                .param("endDate", LocalDate.now().plusDays(15).toString()))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/booking/availableDates")
+                .param("startDate", LocalDate.now().toString())
+                .param("endDate", LocalDate.now().plusDays(15).toString())
+                .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    public void givenMatchingETagShouldReturnNotModifiedUntilDatesChange() throws Exception {
+        String eTag = mockMvc.perform(get("/api/booking/availableDates")
+                .param("startDate", LocalDate.now().toString())
+                .param("endDate", LocalDate.now().plusDays(15).toString()))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/booking/availableDates")
+                .param("startDate", LocalDate.now().toString())
+                .param("endDate", LocalDate.now().plusDays(15).toString())
+                .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        bookingService.createNewBooking(createBookingDTO(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3)));
+
+        mockMvc.perform(get("/api/booking/availableDates")
+                .param("startDate", LocalDate.now().toString())
+                .param("endDate", LocalDate.now().plusDays(15).toString())
+                .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(eTag)))
+                .andExpect(jsonPath("$", hasSize(14)));
+    }
+
+    @Test
+    public void givenBatchRequestShouldReturnAvailableDatesForEachQuery() throws Exception {
+        AvailabilityBatchDTO batch = AvailabilityBatchDTO.builder()
+                .queries(Arrays.asList(
+                        createAvailabilityQueryDTO(CAMPSITE_ID, LocalDate.now(), LocalDate.now().plusDays(9)),
+                        createAvailabilityQueryDTO(CAMPSITE_ID + 1, LocalDate.now(), LocalDate.now().plusDays(19))))
+                .build();
+
+        mockMvc.perform(post("/api/booking/availableDates/batch")
+                .content(toJson(batch))
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].availableDates", hasSize(10)))
+                .andExpect(jsonPath("$[1].availableDates", hasSize(20)));
+    }
+
+    @Test
+    public void givenEmptyBatchRequestShouldReturnError() throws Exception {
+        mockMvc.perform(post("/api/booking/availableDates/batch")
+                .content(toJson(new AvailabilityBatchDTO()))
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().is4xxClientError());
+    }
+
+    @Test
+    public void givenFeedSubscriberShouldReceiveBookedDates() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/booking/availableDates/feed"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        LocalDate startDate = LocalDate.now().plusDays(2);
+        bookingService.createNewBooking(createBookingDTO(startDate, startDate.plusDays(1)));
+
+        assertTrue(waitForContent(result, "event:" + AvailabilityFeed.EVENT_CHANGE));
+        assertTrue(result.getResponse().getContentAsString().contains(startDate.toString()));
+    }
+
+    @Test
+    public void givenIdleFeedSubscriberShouldReceiveHeartbeat() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/booking/availableDates/feed"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        assertTrue(waitForContent(result, ":" + AvailabilityFeed.HEARTBEAT));
+    }
+
+    @Test
+    public void givenUnknownLastEventIdShouldReceiveResync() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/booking/availableDates/feed")
+                .header("Last-Event-ID", "unknown:0"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        assertTrue(waitForContent(result, "event:" + AvailabilityFeed.EVENT_RESYNC));
+    }
+
     // ============================
     // = BOOKING TESTS
     // ============================
@@ -74,6 +242,98 @@ public class BookingControllerTests extends AbstractTest {
                 .andExpect(jsonPath("$.bookingId", is(not(empty()))));
     }
 
+    @Test
+    public void givenRetryWithIdempotencyKeyShouldReturnOriginalBooking() throws Exception {
+        String idempotencyKey = UUID.randomUUID().toString();
+        BookingDTO bookingDto = createBookingDTO(LocalDate.now().plusDays(1), LocalDate.now().plusDays(2));
+
+        MvcResult result = mockMvc.perform(post("/api/booking/new")
+                .header(BookingController.IDEMPOTENCY_KEY, idempotencyKey)
+                .content(toJson(bookingDto))
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andReturn();
+        String bookingId = JsonPath.read(result.getResponse().getContentAsString(), "$.bookingId");
+
+        // Dates are already booked, so booking again would fail
+        mockMvc.perform(post("/api/booking/new")
+                .header(BookingController.IDEMPOTENCY_KEY, idempotencyKey)
+                .content(toJson(bookingDto))
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.bookingId", is(bookingId)));
+
+        assertEquals(1, bookingRepository.count());
+    }
+
+    @Test
+    public void givenIdempotencyKeyReusedForDifferentBookingShouldReturnError() throws Exception {
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        mockMvc.perform(post("/api/booking/new")
+                .header(BookingController.IDEMPOTENCY_KEY, idempotencyKey)
+                .content(toJson(createBookingDTO(LocalDate.now().plusDays(1), LocalDate.now().plusDays(2))))
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/api/booking/new")
+                .header(BookingController.IDEMPOTENCY_KEY, idempotencyKey)
+                .content(toJson(createBookingDTO(LocalDate.now().plusDays(5), LocalDate.now().plusDays(6))))
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void givenIdempotencyKeyStillRunningElsewhereShouldReturnConflict() throws Exception {
+        String idempotencyKey = UUID.randomUUID().toString();
+        // Reserved by a request running on another instance
+        stringRedisTemplate.opsForValue().set("IDEMPOTENCY:new:" + idempotencyKey, "pending");
+
+        try {
+            mockMvc.perform(post("/api/booking/new")
+                    .header(BookingController.IDEMPOTENCY_KEY, idempotencyKey)
+                    .content(toJson(createBookingDTO(LocalDate.now().plusDays(1), LocalDate.now().plusDays(2))))
+                    .contentType(MediaType.APPLICATION_JSON_VALUE))
+                    .andExpect(status().isConflict());
+        } finally {
+            stringRedisTemplate.delete("IDEMPOTENCY:new:" + idempotencyKey);
+        }
+
+        assertEquals(0, bookingRepository.count());
+    }
+
+    @Test
+    public void givenBookingBatchShouldReturnResultForEachBooking() throws Exception {
+        BookingBatchDTO batch = BookingBatchDTO.builder()
+                .bookings(Arrays.asList(
+                        createBookingDTO(LocalDate.now().plusDays(1), LocalDate.now().plusDays(2)),
+                        createBookingDTO(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3))))
+                .build();
+
+        mockMvc.perform(post("/api/booking/new/batch")
+                .content(toJson(batch))
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].booking.bookingId", notNullValue()))
+                .andExpect(jsonPath("$[1].error", notNullValue()));
+    }
+
+    @Test
+    public void givenHoldRequestShouldReturnHold() throws Exception {
+        HoldDTO hold = HoldDTO.builder()
+                .startDate(LocalDate.now().plusDays(1))
+                .endDate(LocalDate.now().plusDays(2))
+                .build();
+
+        mockMvc.perform(post("/api/booking/hold")
+                .content(toJson(hold))
+                .contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.holdId", notNullValue()))
+                .andExpect(jsonPath("$.expiresAt", notNullValue()));
+    }
+
     // ============================
     // = MODIFY BOOKING TESTS
     // ============================
@@ -150,4 +410,15 @@ public class BookingControllerTests extends AbstractTest {
         mockMvc.perform(delete(String.format("/api/booking/delete/%s", booking.getBookingId())))
                 .andExpect(status().isOk());
     }
+
+    // Events are sent by the feed executor, so they show up shortly after
+    private boolean waitForContent(MvcResult result, String content) throws Exception {
+        for (int i = 0; i < 50; i++) {
+            if (result.getResponse().getContentAsString().contains(content)) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
 }
@@ -0,0 +1,83 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.AbstractTest;
+import com.upgrade.campsite.domains.archive.BookingArchiver;
+import com.upgrade.campsite.domains.booking.Booking;
+import com.upgrade.campsite.exceptions.BookingFinishedException;
+import java.time.LocalDate;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class BookingArchiverTests extends AbstractTest {
+
+    @Autowired
+    private BookingArchiver bookingArchiver;
+
+    @Before
+    public void before() {
+        deleteAll();
+    }
+
+    @Test
+    public void givenFinishedBookingShouldMoveItToArchive() {
+        Booking booking = createBooking(
+                LocalDate.now().minusDays(10),
+                LocalDate.now().minusDays(8));
+
+        bookingArchiver.archive();
+
+        assertNull(bookingRepository.findByBookingId(booking.getBookingId()));
+        assertNotNull(archivedBookingRepository.findByBookingId(booking.getBookingId()));
+        assertTrue(bookingRepository.findScheduledDates(CAMPSITE_ID, LocalDate.now().minusDays(10), LocalDate.now()).isEmpty());
+    }
+
+    @Test
+    public void givenArchivedBookingShouldStillReturnIt() {
+        Booking booking = createBooking(
+                LocalDate.now().minusDays(10),
+                LocalDate.now().minusDays(8));
+
+        bookingArchiver.archive();
+
+        assertTrue(bookingService.getBooking(booking.getBookingId()).getEndDate().equals(LocalDate.now().minusDays(8)));
+    }
+
+    @Test(expected = BookingFinishedException.class)
+    public void givenArchivedBookingWhenModifyShouldThrowException() {
+        Booking booking = createBooking(
+                LocalDate.now().minusDays(10),
+                LocalDate.now().minusDays(8));
+
+        bookingArchiver.archive();
+
+        bookingService.modifyBooking(createBookingDTO(
+                booking.getBookingId(),
+                LocalDate.now().plusDays(1),
+                LocalDate.now().plusDays(3)));
+    }
+
+    @Test(expected = BookingFinishedException.class)
+    public void givenArchivedBookingWhenDeleteShouldThrowException() {
+        Booking booking = createBooking(
+                LocalDate.now().minusDays(10),
+                LocalDate.now().minusDays(8));
+
+        bookingArchiver.archive();
+
+        bookingService.deleteBooking(booking.getBookingId());
+    }
+
+    @Test
+    public void givenFutureBookingShouldNotArchiveIt() {
+        Booking booking = createValidBooking();
+
+        bookingArchiver.archive();
+
+        assertNotNull(bookingRepository.findByBookingId(booking.getBookingId()));
+        assertNull(archivedBookingRepository.findByBookingId(booking.getBookingId()));
+    }
+}
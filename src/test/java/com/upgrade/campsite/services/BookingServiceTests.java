@@ -1,24 +1,72 @@
 package com.upgrade.campsite.services;
 
 import com.upgrade.campsite.AbstractTest;
+import com.upgrade.campsite.SqlStatements;
+import com.upgrade.campsite.constants.ErrorMessages;
+import com.upgrade.campsite.domains.booking.AvailabilityIndex;
+import com.upgrade.campsite.domains.booking.AvailabilityWarmUp;
 import com.upgrade.campsite.domains.booking.Booking;
+import com.upgrade.campsite.domains.booking.DateClaims;
+import com.upgrade.campsite.dtos.AvailabilityDTO;
 import com.upgrade.campsite.dtos.BookingDTO;
+import com.upgrade.campsite.dtos.BookingResultDTO;
+import com.upgrade.campsite.dtos.HoldDTO;
 import com.upgrade.campsite.dtos.ModifyBookingDTO;
 import com.upgrade.campsite.exceptions.AlreadyBookedException;
 import com.upgrade.campsite.exceptions.BookingFinishedException;
 import com.upgrade.campsite.exceptions.InvalidInputException;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.MatcherAssert.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
 
 public class BookingServiceTests extends AbstractTest {
 
+    @Autowired
+    private DateClaims dateClaims;
+
+    @Autowired
+    private AvailabilityWarmUp availabilityWarmUp;
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private RedisTemplate<Object, Object> redisTemplate;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${cache.redis.key}")
+    private String cacheKey;
+
+    @Value("${availability.sync.channel}")
+    private String syncChannel;
+
     @Before
     public void before() {
         deleteAll();
@@ -34,14 +82,14 @@ public class BookingServiceTests extends AbstractTest {
         BookingDTO dto = createBookingDTO(startDate, endDate);
         bookingService.createNewBooking(dto);
 
-        List<LocalDate> availableDates = bookingService.getAvailableDates(startDate, endDate);
+        List<LocalDate> availableDates = bookingService.getAvailableDates(CAMPSITE_ID, startDate, endDate);
 
         assertTrue(availableDates.isEmpty());
     }
 
     @Test
     public void givenRequestForAvailableDatesWithEmptyDatesShouldReturnNext30Days() {
-        List<LocalDate> availableDates = bookingService.getAvailableDates(null, null);
+        List<LocalDate> availableDates = bookingService.getAvailableDates(CAMPSITE_ID, null, null);
         assertThat(availableDates, hasSize(30));
     }
 
@@ -51,11 +99,197 @@ public class BookingServiceTests extends AbstractTest {
         LocalDate endDate = LocalDate.now().plusDays(3);
         bookingService.createNewBooking(createBookingDTO(startDate, endDate));
 
-        List<LocalDate> availableDates = bookingService.getAvailableDates(null, null);
+        List<LocalDate> availableDates = bookingService.getAvailableDates(CAMPSITE_ID, null, null);
 
         assertThat(availableDates, hasSize(27));
     }
 
+    @Test
+    public void givenUnknownCampsiteShouldThrowExceptionWithoutCachingIt() {
+        try {
+            bookingService.getAvailableDates(Long.MAX_VALUE, LocalDate.now(), LocalDate.now().plusDays(99));
+            fail();
+        } catch (InvalidInputException ex) {
+            assertTrue(ex.getMessage().equals(ErrorMessages.CAMPSITE_ID_NOT_FOUND));
+        }
+
+        assertFalse(cachingService.getCampsiteIds().contains(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void givenNoBookingsShouldMarkCacheAsLoadedAndReturnAllDates() {
+        LocalDate startDate = LocalDate.now();
+        LocalDate endDate = LocalDate.now().plusDays(99);
+
+        List<LocalDate> availableDates = bookingService.getAvailableDates(CAMPSITE_ID, startDate, endDate);
+
+        assertThat(availableDates, hasSize(100));
+        assertTrue(cachingService.isLoaded(CAMPSITE_ID, startDate));
+    }
+
+    @Test
+    public void givenNewBookingShouldRelayDatesToCache() {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        LocalDate endDate = LocalDate.now().plusDays(3);
+        bookingService.createNewBooking(createBookingDTO(startDate, endDate));
+
+        outboxRelay.relay();
+
+        assertThat(cachingService.getBookedDates(CAMPSITE_ID, startDate, endDate), hasSize(3));
+    }
+
+    @Test
+    public void givenCacheChangesOfModifiedBookingShouldKeepDatesStillBooked() {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        cachingService.syncCache(CAMPSITE_ID, new HashSet<>(Arrays.asList(startDate, startDate.plusDays(1))), LocalDate.now(),
+                cachingService.getVersion(CAMPSITE_ID));
+
+        cachingService.applyChanges(CAMPSITE_ID,
+                new HashSet<>(Arrays.asList(startDate.plusDays(1), startDate.plusDays(2))),
+                new HashSet<>(Arrays.asList(startDate, startDate.plusDays(1))));
+
+        assertThat(cachingService.getBookedDates(CAMPSITE_ID, startDate, startDate.plusDays(2)),
+                containsInAnyOrder(startDate.plusDays(1), startDate.plusDays(2)));
+    }
+
+    @Test
+    public void givenChangeRelayedAfterDatesWereReadSyncShouldNotRemoveIt() {
+        LocalDate date = LocalDate.now().plusDays(1);
+        long version = cachingService.getVersion(CAMPSITE_ID);
+        Set<LocalDate> bookedDates = bookingRepository.findScheduledDates(CAMPSITE_ID, LocalDate.now(), date);
+
+        // Booked and relayed after the dates were read from the DB
+        bookingService.createNewBooking(createBookingDTO(date, date.plusDays(1)));
+        outboxRelay.relay();
+
+        assertFalse(cachingService.syncCache(CAMPSITE_ID, bookedDates, LocalDate.now(), version));
+        assertThat(cachingService.getBookedDates(CAMPSITE_ID, date, date), contains(date));
+    }
+
+    @Test
+    public void givenCacheInLegacyFormatShouldRemoveItAndLoadItAgain() {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        bookingService.getAvailableDates(CAMPSITE_ID, startDate, startDate.plusDays(99));
+        redisTemplate.opsForZSet().add(cacheKey + ":" + CAMPSITE_ID, startDate, startDate.toEpochDay());
+        stringRedisTemplate.delete(cacheKey + ":CODEC");
+
+        cachingService.migrateLegacyKeys();
+
+        assertFalse(redisTemplate.hasKey(cacheKey + ":" + CAMPSITE_ID));
+        assertFalse(cachingService.isLoaded(CAMPSITE_ID, startDate));
+        assertThat(bookingService.getAvailableDates(CAMPSITE_ID, startDate, startDate.plusDays(99)), hasSize(100));
+    }
+
+    @Test
+    public void givenModifiedBookingShouldReturnOldDatesAsAvailable() {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        LocalDate endDate = LocalDate.now().plusDays(3);
+        BookingDTO booking = bookingService.createNewBooking(createBookingDTO(startDate, endDate));
+
+        bookingService.modifyBooking(createBookingDTO(
+                booking.getBookingId(),
+                LocalDate.now().plusDays(5),
+                LocalDate.now().plusDays(7)));
+
+        assertThat(bookingService.getAvailableDates(CAMPSITE_ID, startDate, endDate), hasSize(3));
+        assertTrue(bookingService.getAvailableDates(CAMPSITE_ID, LocalDate.now().plusDays(5), LocalDate.now().plusDays(7)).isEmpty());
+    }
+
+    @Test
+    public void givenDeletedBookingShouldReturnDatesAsAvailable() {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        LocalDate endDate = LocalDate.now().plusDays(3);
+        BookingDTO booking = bookingService.createNewBooking(createBookingDTO(startDate, endDate));
+
+        bookingService.deleteBooking(booking.getBookingId());
+
+        assertThat(bookingService.getAvailableDates(CAMPSITE_ID, startDate, endDate), hasSize(3));
+    }
+
+    @Test
+    public void givenBatchOfQueriesShouldReturnAvailableDatesForEach() {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        LocalDate endDate = LocalDate.now().plusDays(3);
+        bookingService.createNewBooking(createBookingDTO(startDate, endDate));
+
+        List<AvailabilityDTO> results = bookingService.getAvailableDates(Arrays.asList(
+                createAvailabilityQueryDTO(CAMPSITE_ID, startDate, endDate),
+                createAvailabilityQueryDTO(CAMPSITE_ID + 1, startDate, endDate),
+                createAvailabilityQueryDTO(CAMPSITE_ID, LocalDate.now(), LocalDate.now().plusDays(99))));
+
+        assertThat(results, hasSize(3));
+        assertTrue(results.get(0).getAvailableDates().isEmpty());
+        assertThat(results.get(1).getAvailableDates(), hasSize(3));
+        assertThat(results.get(2).getAvailableDates(), hasSize(97));
+    }
+
+    @Test
+    public void givenBookingsSavedInRepositoryResetShouldLoadThemIntoCache() {
+        // Latest dates that can be booked
+        Booking booking = createBooking(LocalDate.now().plusDays(30), LocalDate.now().plusDays(32));
+        cachingService.clearCache();
+
+        bookingService.resetCache();
+
+        assertTrue(cachingService.isLoaded(CAMPSITE_ID, LocalDate.now()));
+        assertThat(cachingService.getBookedDates(CAMPSITE_ID, booking.getStartDate(), booking.getEndDate()), hasSize(3));
+    }
+
+    @Test
+    public void givenBookingsMadeBeforeStartupWarmUpShouldLoadThemIntoCache() {
+        Booking booking = createValidBooking();
+        cachingService.clearCache();
+
+        availabilityWarmUp.warmUp();
+
+        assertTrue(cachingService.isLoaded(CAMPSITE_ID, LocalDate.now()));
+        assertThat(cachingService.getBookedDates(CAMPSITE_ID, booking.getStartDate(), booking.getEndDate()), not(empty()));
+    }
+
+    @Test
+    public void givenBookingsDuringEveryIndexLoadShouldStopRetryingAndReadFromCache() {
+        LocalDate date = LocalDate.now().plusDays(1);
+        availabilityIndex.expireAll();
+
+        // Every snapshot misses a booking written while it was read
+        AtomicInteger loads = new AtomicInteger();
+        assertFalse(availabilityIndex.load(CAMPSITE_ID, () -> {
+            loads.incrementAndGet();
+            availabilityIndex.markBooked(CAMPSITE_ID, Arrays.asList(date));
+            return new HashSet<>();
+        }));
+        assertEquals(3, loads.get());
+        assertFalse(availabilityIndex.isLoaded(CAMPSITE_ID));
+
+        assertThat(bookingService.getAvailableDates(CAMPSITE_ID, date, date), contains(date));
+    }
+
+    @Test
+    public void givenChangesFromAnotherInstanceShouldApplyThemToIndex() throws InterruptedException {
+        LocalDate date = LocalDate.now().plusDays(1);
+        assertThat(bookingService.getAvailableDates(CAMPSITE_ID, date, date), contains(date));
+
+        String sender = UUID.randomUUID().toString().substring(0, 8);
+        stringRedisTemplate.convertAndSend(syncChannel, sender + ":1:" + CAMPSITE_ID + ":" + date.toEpochDay() + ":");
+
+        assertTrue(waitForAvailability(date, false));
+    }
+
+    @Test
+    public void givenMissedChangesFromAnotherInstanceShouldLoadIndexAgain() throws InterruptedException {
+        LocalDate date = LocalDate.now().plusDays(1);
+        assertThat(bookingService.getAvailableDates(CAMPSITE_ID, date, date), contains(date));
+
+        // Date is only booked in the index, so it is free again once the index is loaded from the DB
+        String sender = UUID.randomUUID().toString().substring(0, 8);
+        stringRedisTemplate.convertAndSend(syncChannel, sender + ":1:" + CAMPSITE_ID + ":" + date.toEpochDay() + ":");
+        assertTrue(waitForAvailability(date, false));
+
+        stringRedisTemplate.convertAndSend(syncChannel, sender + ":3:" + CAMPSITE_ID + "::");
+
+        assertTrue(waitForAvailability(date, true));
+    }
+
     // ============================
     // = BOOKING TESTS
     // ============================
@@ -102,12 +336,145 @@ public class BookingServiceTests extends AbstractTest {
         bookingService.createNewBooking(dto);
     }
 
+    @Test
+    public void givenExistingBookingANewOneWithSameDatesInAnotherCampsiteShouldBook() {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        LocalDate endDate = LocalDate.now().plusDays(3);
+        bookingService.createNewBooking(createBookingDTO(startDate, endDate));
+
+        BookingDTO dto = createBookingDTO(startDate, endDate);
+        dto.setCampsiteId(CAMPSITE_ID + 1);
+        bookingService.createNewBooking(dto);
+
+        assertTrue(bookingService.getAvailableDates(CAMPSITE_ID, startDate, endDate).isEmpty());
+        assertTrue(bookingService.getAvailableDates(CAMPSITE_ID + 1, startDate, endDate).isEmpty());
+        assertThat(bookingService.getAvailableDates(CAMPSITE_ID + 2, startDate, endDate), hasSize(3));
+    }
+
     @Test
     public void givenValidBookingShouldCallSaveMethod() {
         Booking booking = createValidBooking();
         assertTrue(booking.getBookingId().equals(bookingRepository.findByBookingId(booking.getBookingId()).getBookingId()));
     }
 
+    @Test
+    public void givenDatesBeingBookedByAnotherRequestShouldRejectBeforeSaving() {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        LocalDate endDate = LocalDate.now().plusDays(3);
+        Object otherRequest = new Object();
+        dateClaims.claim(CAMPSITE_ID, Arrays.asList(endDate), otherRequest);
+
+        try {
+            bookingService.createNewBooking(createBookingDTO(startDate, endDate));
+            fail("Dates being booked by another request should be rejected.");
+        } catch (AlreadyBookedException ex) {
+            assertTrue(bookingRepository.findScheduledDates(CAMPSITE_ID, startDate, endDate).isEmpty());
+        } finally {
+            dateClaims.release(CAMPSITE_ID, Arrays.asList(endDate), otherRequest);
+        }
+
+        // Claims are released when the request completes
+        assertNotNull(bookingService.createNewBooking(createBookingDTO(startDate, endDate)).getBookingId());
+    }
+
+    @Test
+    public void givenBatchOfBookingsShouldReturnResultForEach() {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        LocalDate endDate = LocalDate.now().plusDays(3);
+        BookingDTO otherCampsite = createBookingDTO(startDate, endDate);
+        otherCampsite.setCampsiteId(CAMPSITE_ID + 1);
+
+        List<BookingResultDTO> results = bookingService.createNewBookings(Arrays.asList(
+                createBookingDTO(startDate, endDate),
+                createBookingDTO(endDate, endDate.plusDays(1)),
+                createBookingDTO(startDate, startDate.plusDays(10)),
+                otherCampsite));
+
+        assertThat(results, hasSize(4));
+        assertNotNull(results.get(0).getBooking());
+        assertTrue(results.get(1).getError().equals(ErrorMessages.ALREADY_BOOKED));
+        assertTrue(results.get(2).getError().equals(ErrorMessages.INVALID_BOOKING_DATES));
+        assertNotNull(results.get(3).getBooking());
+
+        assertTrue(bookingService.getAvailableDates(CAMPSITE_ID, startDate, endDate).isEmpty());
+        assertNotNull(bookingRepository.findByBookingId(results.get(3).getBooking().getBookingId()));
+    }
+
+    // ============================
+    // = HOLD TESTS
+    // ============================
+    @Test
+    public void givenHeldDatesShouldOnlyBookThemWithTheHold() {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        LocalDate endDate = LocalDate.now().plusDays(3);
+        HoldDTO hold = bookingService.holdDates(HoldDTO.builder().startDate(startDate).endDate(endDate).build());
+
+        try {
+            bookingService.createNewBooking(createBookingDTO(startDate, endDate));
+            fail("Held dates should not be booked without the hold.");
+        } catch (AlreadyBookedException ex) {
+            assertTrue(bookingRepository.findScheduledDates(CAMPSITE_ID, startDate, endDate).isEmpty());
+        }
+
+        BookingDTO booking = createBookingDTO(startDate, endDate);
+        booking.setHoldId(hold.getHoldId());
+        assertNotNull(bookingService.createNewBooking(booking).getBookingId());
+    }
+
+    @Test(expected = AlreadyBookedException.class)
+    public void givenHeldDatesShouldNotHoldThemAgain() {
+        HoldDTO hold = HoldDTO.builder()
+                .startDate(LocalDate.now().plusDays(1))
+                .endDate(LocalDate.now().plusDays(3))
+                .build();
+        bookingService.holdDates(hold);
+        bookingService.holdDates(hold);
+    }
+
+    @Test(expected = AlreadyBookedException.class)
+    public void givenHoldOnlyOnThisInstanceShouldNotBookItsDatesWithoutClaims() {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        LocalDate endDate = LocalDate.now().plusDays(3);
+        HoldDTO hold = bookingService.holdDates(HoldDTO.builder().startDate(startDate).endDate(endDate).build());
+        // Hold couldn't be written to the cache
+        cachingService.releaseHold(hold.getHoldId());
+
+        Object target = AopTestUtils.getUltimateTargetObject(bookingService);
+        ReflectionTestUtils.setField(target, "claimsEnabled", false);
+        try {
+            bookingService.createNewBooking(createBookingDTO(startDate, endDate));
+        } finally {
+            ReflectionTestUtils.setField(target, "claimsEnabled", true);
+        }
+    }
+
+    @Test
+    public void givenDateHeldByOtherShouldNotHoldAnyOfTheDates() {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        Set<LocalDate> dates = new HashSet<>(Arrays.asList(startDate, startDate.plusDays(1), startDate.plusDays(2)));
+        assertTrue(cachingService.holdDates(CAMPSITE_ID, new HashSet<>(Arrays.asList(startDate.plusDays(1))), "other", 60));
+
+        try {
+            assertFalse(cachingService.holdDates(CAMPSITE_ID, dates, "hold", 60));
+
+            assertThat(cachingService.getHolders(CAMPSITE_ID, dates), contains("other"));
+            assertTrue(cachingService.getHeldDates("hold", CAMPSITE_ID).isEmpty());
+        } finally {
+            cachingService.releaseHold("other");
+        }
+    }
+
+    @Test
+    public void givenReleasedHoldShouldBookItsDates() {
+        LocalDate startDate = LocalDate.now().plusDays(1);
+        LocalDate endDate = LocalDate.now().plusDays(3);
+        HoldDTO hold = bookingService.holdDates(HoldDTO.builder().startDate(startDate).endDate(endDate).build());
+
+        bookingService.releaseHold(hold.getHoldId());
+
+        assertNotNull(bookingService.createNewBooking(createBookingDTO(startDate, endDate)).getBookingId());
+    }
+
     // ============================
     // = MODIFY BOOKING TESTS
     // ============================
@@ -125,6 +492,56 @@ public class BookingServiceTests extends AbstractTest {
         assertTrue(bookingService.getBooking(booking.getBookingId()).getStartDate().equals(LocalDate.now().plusDays(5)));
     }
 
+    @Test
+    public void givenOverlappingModificationShouldOnlyFreeDatesNoLongerBooked() {
+        BookingDTO booking = bookingService.createNewBooking(createBookingDTO(
+                LocalDate.now().plusDays(5),
+                LocalDate.now().plusDays(7)));
+
+        bookingService.modifyBooking(createBookingDTO(
+                booking.getBookingId(),
+                LocalDate.now().plusDays(6),
+                LocalDate.now().plusDays(8)));
+
+        assertThat(bookingService.getAvailableDates(CAMPSITE_ID, LocalDate.now().plusDays(5), LocalDate.now().plusDays(8)),
+                contains(LocalDate.now().plusDays(5)));
+        assertTrue(bookingService.getBooking(booking.getBookingId()).getEndDate().equals(LocalDate.now().plusDays(8)));
+    }
+
+    @Test
+    public void givenOverlappingModificationShouldOnlyDeleteAndInsertChangedNights() {
+        BookingDTO booking = bookingService.createNewBooking(createBookingDTO(
+                LocalDate.now().plusDays(5),
+                LocalDate.now().plusDays(7)));
+        SqlStatements.clear();
+
+        bookingService.modifyBooking(createBookingDTO(
+                booking.getBookingId(),
+                LocalDate.now().plusDays(6),
+                LocalDate.now().plusDays(8)));
+
+        // A single night out and a single night in, the nights kept by the booking are not deleted
+        List<String> deletes = SqlStatements.get("delete from booking_date");
+        assertThat(deletes, hasSize(1));
+        assertThat(deletes.get(0), containsString("date=?"));
+        assertThat(SqlStatements.get("insert into booking_date"), hasSize(1));
+    }
+
+    @Test
+    public void givenCachedBookingModificationShouldReturnModifiedBooking() {
+        BookingDTO booking = bookingService.createNewBooking(createBookingDTO(
+                LocalDate.now().plusDays(5),
+                LocalDate.now().plusDays(7)));
+        assertTrue(bookingService.getBooking(booking.getBookingId()).getEndDate().equals(LocalDate.now().plusDays(7)));
+
+        bookingService.modifyBooking(createBookingDTO(
+                booking.getBookingId(),
+                LocalDate.now().plusDays(10),
+                LocalDate.now().plusDays(11)));
+
+        assertTrue(bookingService.getBooking(booking.getBookingId()).getEndDate().equals(LocalDate.now().plusDays(11)));
+    }
+
     @Test(expected = InvalidInputException.class)
     public void givenModificationOfInvalidBookingIdShouldThrowException() {
         ModifyBookingDTO modify = createBookingDTO(
@@ -171,4 +588,24 @@ public class BookingServiceTests extends AbstractTest {
         Booking saved = bookingRepository.findByBookingId(booking.getBookingId());
         assertNull(saved);
     }
+
+    @Test(expected = InvalidInputException.class)
+    public void givenCachedBookingDeletionShouldNotReturnBooking() {
+        Booking booking = createValidBooking();
+        assertNotNull(bookingService.getBooking(booking.getBookingId()));
+
+        bookingService.deleteBooking(booking.getBookingId());
+        bookingService.getBooking(booking.getBookingId());
+    }
+
+    // Changes from other instances are applied asynchronously
+    private boolean waitForAvailability(LocalDate date, boolean available) throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            if (bookingService.getAvailableDates(CAMPSITE_ID, date, date).isEmpty() != available) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
 }
@@ -0,0 +1,74 @@
+package com.upgrade.campsite.services;
+
+import com.upgrade.campsite.AbstractTest;
+import com.upgrade.campsite.domains.booking.BookedDatesCache;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashSet;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "cache.type=" + BookedDatesCache.TYPE_TIERED)
+public class TieredBookedDatesCacheTests extends AbstractTest {
+
+    @Autowired
+    private BookedDatesCache bookedDatesCache;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${cache.tiered.channel}")
+    private String channel;
+
+    private final LocalDate date = LocalDate.now().plusDays(1);
+
+    @Before
+    public void before() {
+        deleteAll();
+        bookedDatesCache.clearCache();
+    }
+
+    @Test
+    public void givenSyncedCampsiteShouldReadItFromThisInstance() {
+        bookedDatesCache.syncCache(CAMPSITE_ID, Collections.singleton(date), LocalDate.now(),
+                bookedDatesCache.getVersion(CAMPSITE_ID));
+
+        // Changed in Redis only, as if this instance missed the change
+        cachingService.applyChanges(CAMPSITE_ID, new HashSet<>(), Collections.singleton(date));
+
+        assertThat(bookedDatesCache.getBookedDates(CAMPSITE_ID, date, date), contains(date));
+    }
+
+    @Test
+    public void givenCampsiteLoadedByAnotherInstanceShouldCopyItFromRedis() {
+        cachingService.syncCache(CAMPSITE_ID, Collections.singleton(date), LocalDate.now(),
+                cachingService.getVersion(CAMPSITE_ID));
+
+        assertTrue(bookedDatesCache.isLoaded(CAMPSITE_ID, date));
+        assertThat(bookedDatesCache.getBookedDates(CAMPSITE_ID, date, date), contains(date));
+    }
+
+    @Test
+    public void givenChangeByAnotherInstanceShouldReadItFromRedis() throws InterruptedException {
+        bookedDatesCache.syncCache(CAMPSITE_ID, Collections.singleton(date), LocalDate.now(),
+                bookedDatesCache.getVersion(CAMPSITE_ID));
+
+        cachingService.applyChanges(CAMPSITE_ID, new HashSet<>(), Collections.singleton(date));
+        stringRedisTemplate.convertAndSend(channel, "other:" + CAMPSITE_ID);
+
+        // Invalidations are received asynchronously
+        for (int i = 0; i < 50 && !bookedDatesCache.getBookedDates(CAMPSITE_ID, date, date).isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        assertThat(bookedDatesCache.getBookedDates(CAMPSITE_ID, date, date), empty());
+    }
+
+}